@@ -0,0 +1,55 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AuthTokens;
+
+// Cost per request of checking who is making a message write: verifying a bearer token, against looking the account
+// up with AccountDAO as a client without tokens would need on every write. Issuing is paid once per login.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AuthTokenBenchmark {
+    private AuthTokens authTokens;
+    private AccountDAO accountDAO;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.reset(0);
+        authTokens = new AuthTokens(new byte[32], 3600);
+        accountDAO = new AccountDAO();
+        token = authTokens.issue(7);
+    }
+
+    @Benchmark
+    public int verifyToken() {
+        return authTokens.verify(token);
+    }
+
+    @Benchmark
+    public String issueToken() {
+        return authTokens.issue(7);
+    }
+
+    @Benchmark
+    public Account lookUpAccount() {
+        return accountDAO.searchById(7);
+    }
+}
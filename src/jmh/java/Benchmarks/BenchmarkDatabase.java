@@ -0,0 +1,42 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+// Seeds the database for benchmarks: the SocialMedia.sql fixture plus generated accounts and messages.
+// Messages are spread round-robin over the accounts, so message ids run from 1 to messageCount + 1.
+final class BenchmarkDatabase {
+    static final int ACCOUNTS = 100;
+    static final long FIRST_EPOCH = 1669947792L;
+
+    private BenchmarkDatabase() {
+    }
+
+    static void reset(int messageCount) {
+        ConnectionUtil.resetTestDatabase();
+
+        AccountDAO accountDAO = new AccountDAO();
+        for (int i = 2; i <= ACCOUNTS; i++) {
+            accountDAO.addUser(new Account("benchuser" + i, "password"));
+        }
+
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            batch.add(new Message(i % ACCOUNTS + 1, "benchmark message " + i, FIRST_EPOCH + i));
+            if (batch.size() == 1000) {
+                messageDAO.createMessages(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            messageDAO.createMessages(batch);
+        }
+    }
+}
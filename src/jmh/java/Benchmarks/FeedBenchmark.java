@@ -0,0 +1,149 @@
+package Benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.FeedService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+// Home feed reads and posts over a follow graph with the skew of real ones: every account follows `following` others
+// picked by a Zipf distribution over popularity, so a few accounts are followed by nearly everyone and most by a
+// handful. With 5000 accounts the most popular has about 5000 followers, the 30th about 1000 and the 1000th about 30.
+// fanOutLimit 0 fans every author in on read, a very large one fans every author out on write, and 1000 fans the few
+// dozen most popular authors in and the rest out.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FeedBenchmark {
+    @Param({"0", "1000", "1000000"})
+    public int fanOutLimit;
+
+    @Param({"5000"})
+    public int accounts;
+
+    @Param({"50"})
+    public int following;
+
+    @Param({"10"})
+    public int messagesPerAccount;
+
+    private MessageService messageService;
+    private FeedService feedService;
+    private double[] popularity;    // Cumulative Zipf weights of the accounts, most popular first.
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.reset(0);
+        popularity = zipf(accounts, 1.0);
+        Random random = new Random(42);
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO account(username, password) VALUES(?, 'password')")) {
+                for (int account = BenchmarkDatabase.ACCOUNTS + 1; account <= accounts; account++) {
+                    stmt.setString(1, "feeduser" + account);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO follow(follower_id, followee_id) VALUES(?, ?)")) {
+                for (int follower = 1; follower <= accounts; follower++) {
+                    Set<Integer> followees = new HashSet<>();
+                    while (followees.size() < following) {
+                        int followee = pick(random.nextDouble());
+                        if (followee != follower && followees.add(followee)) {
+                            stmt.setInt(1, follower);
+                            stmt.setInt(2, followee);
+                            stmt.addBatch();
+                        }
+                    }
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, 'benchmark message', ?)")) {
+                for (int i = 0; i < accounts * messagesPerAccount; i++) {
+                    stmt.setInt(1, i % accounts + 1);
+                    stmt.setLong(2, BenchmarkDatabase.FIRST_EPOCH + i);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+
+        AccountService accountService = new AccountService();
+        messageService = new MessageService(new MessageDAO(), accountService, null);
+        FeedService.Config config = new FeedService.Config();
+        config.fanOutLimit = fanOutLimit;
+        feedService = new FeedService(accountService, messageService, new FollowDAO(), new MessageDAO(), config);
+        for (int account = 1; account <= accounts; account++) {
+            feedService.retrieveFeed(account, 20);    // Build every inbox and load every author timeline.
+        }
+    }
+
+    // A feed read by a random account, from its inbox in memory.
+    @Benchmark
+    public List<Message> readFeed() {
+        return feedService.retrieveFeed(ThreadLocalRandom.current().nextInt(1, accounts + 1), 20);
+    }
+
+    // A post by an account picked by popularity, so popular accounts, with the most followers, post most.
+    @Benchmark
+    public Message post() {
+        int author = pick(ThreadLocalRandom.current().nextDouble());
+        return messageService.createMessage(new Message(author, "benchmark post", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    private int pick(double u) {
+        int low = 0;
+        int high = popularity.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (popularity[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low + 1;
+    }
+
+    private static double[] zipf(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
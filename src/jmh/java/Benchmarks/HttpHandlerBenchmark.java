@@ -0,0 +1,87 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+// End-to-end latency of the Javalin handlers, measured from an HTTP client on the same machine.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HttpHandlerBenchmark {
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    private Javalin app;
+    private HttpClient client;
+    private String baseUrl;
+    private String authorization;   // testuser1's bearer token, as posting needs one.
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        BenchmarkDatabase.reset(tableSize);
+        app = new SocialMediaController().startAPI();
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpResponse<String> login = send(HttpRequest.newBuilder(URI.create(baseUrl + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser1\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build());
+        authorization = "Bearer " + login.headers().firstValue("X-Auth-Token").orElseThrow();
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public HttpResponse<String> getMessageById() throws IOException, InterruptedException {
+        int mId = ThreadLocalRandom.current().nextInt(1, tableSize + 2);
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + mId)).build());
+    }
+
+    @Benchmark
+    public HttpResponse<String> getMessagesPage() throws IOException, InterruptedException {
+        int after = ThreadLocalRandom.current().nextInt(0, tableSize);
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages?limit=100&after=" + after)).build());
+    }
+
+    @Benchmark
+    public HttpResponse<String> postMessage() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"benchmark post\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
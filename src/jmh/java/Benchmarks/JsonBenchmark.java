@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.MessageJsonCache;
+import Model.Account;
+import Model.Message;
+
+// Jackson serialization and deserialization cost of the model classes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Message message;
+    private Account account;
+    private byte[] messageJson;
+    private byte[] accountJson;
+    private List<Message> page;
+    private MessageJsonCache jsonCache;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        message = new Message(42, 7, "a typical message of a few dozen characters", BenchmarkDatabase.FIRST_EPOCH);
+        account = new Account(7, "benchuser7", "password");
+        messageJson = mapper.writeValueAsBytes(message);
+        accountJson = mapper.writeValueAsBytes(account);
+
+        page = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            page.add(new Message(i, 7, "a typical message of a few dozen characters", BenchmarkDatabase.FIRST_EPOCH + i));
+        }
+        jsonCache = new MessageJsonCache(mapper);
+        jsonCache.toJson(page);
+    }
+
+    @Benchmark
+    public byte[] serializeMessage() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeMessageCached() {
+        return jsonCache.toJson(page.get(41));
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] serializePageCached() {
+        return jsonCache.toJson(page);
+    }
+
+    @Benchmark
+    public Message deserializeMessage() throws Exception {
+        return mapper.readValue(messageJson, Message.class);
+    }
+
+    @Benchmark
+    public byte[] serializeAccount() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Account deserializeAccount() throws Exception {
+        return mapper.readValue(accountJson, Account.class);
+    }
+}
@@ -0,0 +1,68 @@
+package Benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.LoginRateLimiter;
+import Service.TooManyRequestsException;
+
+// Cost of a login rate-limit check with 8 threads checking at once: all against one username, as when an account is
+// under attack and the threads contend on its bucket, and against usernames and addresses drawn from a million, as in
+// credential stuffing, where memory must not grow with the keys seen.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoginRateLimiterBenchmark {
+    private static final int KEYS = 1_000_000;
+
+    private LoginRateLimiter limiter;
+    private String[] usernames;
+    private String[] addresses;
+
+    @Setup
+    public void setUp() {
+        limiter = new LoginRateLimiter();
+        usernames = new String[KEYS];
+        addresses = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            usernames[i] = "user" + i;
+            addresses[i] = "10." + (i >>> 16) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+    }
+
+    @Benchmark
+    public boolean oneUsername() {
+        return check("10.0.0.1", "victim");
+    }
+
+    @Benchmark
+    public boolean manyKeys() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return check(addresses[random.nextInt(KEYS)], usernames[random.nextInt(KEYS)]);
+    }
+
+    private boolean check(String address, String username) {
+        try {
+            limiter.acquire(address, username);
+            return true;
+        } catch (TooManyRequestsException e) {
+            return false;
+        }
+    }
+}
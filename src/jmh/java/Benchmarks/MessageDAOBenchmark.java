@@ -0,0 +1,74 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+// CRUD throughput of MessageDAO against tables of different sizes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessageDAOBenchmark {
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.reset(tableSize);
+        messageDAO = new MessageDAO();
+    }
+
+    @Benchmark
+    public Message retrieveMessageById() {
+        return messageDAO.retrieveMessageById(randomMessageId());
+    }
+
+    @Benchmark
+    public List<Message> retrieveMessagesPage() {
+        return messageDAO.retrieveMessagesAfter(randomMessageId(), 100);
+    }
+
+    @Benchmark
+    public List<Message> retrieveAllMessagesForUserId() {
+        return messageDAO.retrieveAllMessagesForUserId(ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.ACCOUNTS + 1));
+    }
+
+    @Benchmark
+    public Message updateMessageByMessageId() {
+        Message message = new Message();
+        message.setMessage_text("updated " + System.nanoTime());
+        return messageDAO.updateMessageByMessageId(randomMessageId(), message);
+    }
+
+    // Create and delete as a pair so the table size stays constant for the other benchmarks.
+    @Benchmark
+    public Message createThenDeleteMessage() {
+        Message created = messageDAO.createMessage(new Message(1, "transient message", BenchmarkDatabase.FIRST_EPOCH));
+        return messageDAO.deleteMessageByMessageId(created.getMessage_id());
+    }
+
+    private int randomMessageId() {
+        return ThreadLocalRandom.current().nextInt(1, tableSize + 2);
+    }
+}
@@ -0,0 +1,51 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+
+// Cost of MessageService.createMessage compared with inserting through MessageDAO directly, which skips the text
+// validation and the posted_by existence check.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessageServiceBenchmark {
+    private MessageDAO messageDAO;
+    private MessageService messageService;
+
+    // The table grows during each iteration, so start every iteration from the same state.
+    @Setup(Level.Iteration)
+    public void setUp() {
+        BenchmarkDatabase.reset(1000);
+        messageDAO = new MessageDAO();
+        messageService = new MessageService(messageDAO, new AccountService());
+    }
+
+    @Benchmark
+    public Message createMessageWithValidation() {
+        return messageService.createMessage(new Message(1, "benchmark post", BenchmarkDatabase.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    public Message createMessageWithoutValidation() {
+        return messageDAO.createMessage(new Message(1, "benchmark post", BenchmarkDatabase.FIRST_EPOCH));
+    }
+}
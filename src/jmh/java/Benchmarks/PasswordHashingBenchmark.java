@@ -0,0 +1,59 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Service.PasswordHasher;
+
+// Login throughput at each PBKDF2 cost, with every core logging in at once as in a login storm: verifying the hash
+// alone, and a full AccountService.login including the account lookup. The iteration counts are the
+// auth.pbkdf2.iterations values to compare; the default is 600000.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(Threads.MAX)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class PasswordHashingBenchmark {
+    @Param({"100000", "310000", "600000"})
+    public int iterations;
+
+    private PasswordHasher passwordHasher;
+    private AccountService accountService;
+    private String storedHash;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.reset(0);
+        passwordHasher = new PasswordHasher(iterations);
+        accountService = new AccountService(new AccountDAO(), passwordHasher);
+        accountService.register(new Account("benchlogin", "password"));
+        storedHash = passwordHasher.hash("password");
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return passwordHasher.verify("password", storedHash);
+    }
+
+    @Benchmark
+    public Account login() {
+        return accountService.login(new Account("benchlogin", "password"));
+    }
+}
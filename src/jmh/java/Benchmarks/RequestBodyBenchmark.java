@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import Controller.WireFormat;
+import Model.Message;
+
+// Cost of reading a request body: first into a String and then through the ObjectMapper, as the handlers used to, or
+// straight from the request stream through a shared ObjectReader, as they do now. Run with "-prof gc" and compare
+// gc.alloc.rate.norm for the bytes allocated per request.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RequestBodyBenchmark {
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<>() {};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ObjectReader messageReader;
+    private ObjectReader batchReader;
+    private byte[] messageBody;
+    private byte[] batchBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        messageReader = WireFormat.JSON.reader(Message.class);
+        batchReader = WireFormat.JSON.reader(MESSAGE_LIST);
+        messageBody = mapper.writeValueAsBytes(new Message(7, "a typical message of a few dozen characters", BenchmarkDatabase.FIRST_EPOCH));
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            batch.add(new Message(7, "a typical message of a few dozen characters", BenchmarkDatabase.FIRST_EPOCH + i));
+        }
+        batchBody = mapper.writeValueAsBytes(batch);
+    }
+
+    @Benchmark
+    public Message messageViaString() throws IOException {
+        return mapper.readValue(new String(messageBody, StandardCharsets.UTF_8), Message.class);
+    }
+
+    @Benchmark
+    public Message messageViaStream() throws IOException {
+        return messageReader.readValue(new ByteArrayInputStream(messageBody));
+    }
+
+    @Benchmark
+    public List<Message> batchViaString() throws IOException {
+        return mapper.readValue(new String(batchBody, StandardCharsets.UTF_8), MESSAGE_LIST);
+    }
+
+    @Benchmark
+    public List<Message> batchViaStream() throws IOException {
+        return batchReader.readValue(new ByteArrayInputStream(batchBody));
+    }
+}
@@ -0,0 +1,55 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Service.MessageSearchIndex;
+
+// Cost of the message search index over 100,000 messages: a query whose terms every message has, so the whole of
+// both lists is intersected and ranked into the top 20; a query with one rare term, which the intersection starts
+// from and gallops through the common one; and rebuilding the index from the table.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+    private MessageDAO messageDAO;
+    private MessageSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.reset(100_000);
+        messageDAO = new MessageDAO();
+        index = new MessageSearchIndex();
+        index.rebuild(messageDAO).join();
+    }
+
+    @Benchmark
+    public List<Integer> commonTerms() {
+        return index.search("benchmark message", 20);
+    }
+
+    @Benchmark
+    public List<Integer> rareTerm() {
+        return index.search("message 4242", 20);
+    }
+
+    @Benchmark
+    public boolean rebuild() {
+        return new MessageSearchIndex().rebuild(messageDAO).join();
+    }
+}
@@ -0,0 +1,79 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import Controller.ThreadMode;
+import io.javalin.Javalin;
+
+// Request throughput with handlers on platform threads compared with virtual threads, under many concurrent clients.
+// With platform threads the database work runs on the DatabaseExecutor's pool; with virtual threads it runs on the
+// request's own thread, so the two modes differ in the thread switch per query and in how many queries wait on the
+// connection pool at once. getMessagesForUser is mostly answered from the timeline cache, getMessagePage always
+// queries the database. Run on JDK 21 or newer, otherwise the virtual mode falls back to platform threads and the
+// results match.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ThreadModeBenchmark {
+    private static final int MESSAGES = 10_000;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public ThreadMode threadMode;
+
+    private Javalin app;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup
+    public void setUp() {
+        BenchmarkDatabase.reset(MESSAGES);
+        app = new SocialMediaController().startAPI(threadMode);
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public HttpResponse<String> getMessagesForUser() throws IOException, InterruptedException {
+        int accountId = ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.ACCOUNTS + 1);
+        return client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/accounts/" + accountId + "/messages")).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Benchmark
+    public HttpResponse<String> getMessagePage() throws IOException, InterruptedException {
+        int after = ThreadLocalRandom.current().nextInt(0, MESSAGES - 50);
+        return client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/messages?limit=50&after=" + after)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
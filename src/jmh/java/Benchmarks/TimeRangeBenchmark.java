@@ -0,0 +1,88 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessageTimeRange;
+
+// Reading the messages posted in a time window: the indexed range scan, a page of it and one user's share of it,
+// against the full-table read and client-side filter callers used before range queries existed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TimeRangeBenchmark {
+    @Param({"100000"})
+    public int tableSize;
+
+    // Messages are one second apart, so this is also the number of messages in the window.
+    @Param({"1000"})
+    public int windowSeconds;
+
+    private MessageDAO messageDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.reset(tableSize);
+        messageDAO = new MessageDAO();
+    }
+
+    @Benchmark
+    public List<Message> fullScanFilter() {
+        MessageTimeRange range = randomRange(null);
+        List<Message> messages = new ArrayList<>();
+        for (Message message : messageDAO.retrieveAllMessages()) {
+            if (message.getTime_posted_epoch() >= range.since && message.getTime_posted_epoch() < range.until) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Message> rangeScan() {
+        return messageDAO.retrieveMessagesInTimeRange(randomRange(null), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void rangeScanStreamed(Blackhole blackhole) throws IOException {
+        messageDAO.streamMessagesInTimeRange(randomRange(null), Integer.MAX_VALUE, blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Message> rangePage() {
+        return messageDAO.retrieveMessagesInTimeRange(randomRange(null), 100);
+    }
+
+    @Benchmark
+    public List<Message> rangeScanForUser() {
+        return messageDAO.retrieveMessagesInTimeRange(
+                randomRange(ThreadLocalRandom.current().nextInt(1, BenchmarkDatabase.ACCOUNTS + 1)), Integer.MAX_VALUE);
+    }
+
+    private MessageTimeRange randomRange(Integer postedBy) {
+        long since = BenchmarkDatabase.FIRST_EPOCH + ThreadLocalRandom.current().nextInt(tableSize - windowSeconds);
+        return new MessageTimeRange(postedBy, since, since + windowSeconds);
+    }
+}
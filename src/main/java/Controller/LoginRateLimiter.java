@@ -0,0 +1,78 @@
+package Controller;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import Service.TooManyRequestsException;
+import Util.TokenBucketTable;
+
+// Throttles login attempts before they reach the database or the password hasher, with a token bucket per client
+// address and one per username. The address limit slows a single source trying many accounts; the tighter username
+// limit slows many sources guessing one account's password. Both hold a fixed number of buckets, so memory stays
+// bounded however many addresses and usernames an attack uses.
+public class LoginRateLimiter {
+    // Settings, read from system properties.
+    public static class Config {
+        public boolean enabled = !"false".equalsIgnoreCase(System.getProperty("auth.loginLimit.enabled"));
+        public int slots = Integer.getInteger("auth.loginLimit.slots", 1 << 18);
+        public int addressBurst = Integer.getInteger("auth.loginLimit.addressBurst", 30);
+        public double addressPerSecond = Double.parseDouble(System.getProperty("auth.loginLimit.addressPerSecond", "1"));
+        public int usernameBurst = Integer.getInteger("auth.loginLimit.usernameBurst", 5);
+        public double usernamePerSecond = Double.parseDouble(System.getProperty("auth.loginLimit.usernamePerSecond", "0.1"));
+    }
+
+    // Point-in-time view of the limiter counters.
+    public static class Stats {
+        public final long allowed;
+        public final long rejectedByAddress;
+        public final long rejectedByUsername;
+
+        Stats(long allowed, long rejectedByAddress, long rejectedByUsername) {
+            this.allowed = allowed;
+            this.rejectedByAddress = rejectedByAddress;
+            this.rejectedByUsername = rejectedByUsername;
+        }
+    }
+
+    private final boolean enabled;
+    private final TokenBucketTable addresses;
+    private final TokenBucketTable usernames;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejectedByAddress = new LongAdder();
+    private final LongAdder rejectedByUsername = new LongAdder();
+
+    public LoginRateLimiter() {
+        this(new Config());
+    }
+
+    public LoginRateLimiter(Config config) {
+        this.enabled = config.enabled;
+        this.addresses = new TokenBucketTable(config.slots, config.addressBurst, config.addressPerSecond);
+        this.usernames = new TokenBucketTable(config.slots, config.usernameBurst, config.usernamePerSecond);
+    }
+
+    // Count a login attempt from address for username, which may be null, or throw TooManyRequestsException if either
+    // has used up its attempts. An attempt turned away by address does not use up one of the username's.
+    public void acquire(String address, String username) {
+        if (!enabled) {
+            return;
+        }
+        long wait = addresses.tryAcquire(address);
+        if (wait > 0) {
+            rejectedByAddress.increment();
+            throw new TooManyRequestsException("Error: Too many login attempts from this address", wait);
+        }
+        if (username != null) {
+            wait = usernames.tryAcquire(username);
+            if (wait > 0) {
+                rejectedByUsername.increment();
+                throw new TooManyRequestsException("Error: Too many login attempts for this account", wait);
+            }
+        }
+        allowed.increment();
+    }
+
+    public Stats getStats() {
+        return new Stats(allowed.sum(), rejectedByAddress.sum(), rejectedByUsername.sum());
+    }
+}
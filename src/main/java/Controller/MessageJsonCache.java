@@ -0,0 +1,161 @@
+package Controller;
+
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import Model.Message;
+
+// Bounded LRU cache of messages already serialized to UTF-8 JSON, keyed by message_id, so hot messages are written to
+// responses without going through the ObjectMapper again. List responses are put together from the cached fragments.
+// An entry is only used for a message equal to the one it was made from, so a stale fragment is never sent even if a
+// write races with a read; updates and deletes also drop their entry straight away.
+public class MessageJsonCache {
+    private static class Entry {
+        final Message message;
+        final byte[] json;
+        volatile String etag;   // Computed on first use.
+
+        Entry(Message message, byte[] json) {
+            this.message = message;
+            this.json = json;
+        }
+    }
+
+    // Point-in-time view of the cache counters.
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final int size;
+
+        Stats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+    }
+
+    private final ObjectWriter writer;
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MessageJsonCache(ObjectMapper mapper) {
+        this(mapper, Integer.getInteger("cache.json.maxSize", 10_000));
+    }
+
+    public MessageJsonCache(ObjectMapper mapper, int maxSize) {
+        this.writer = mapper.writerFor(Message.class);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // The message as JSON, from the cache when it holds a fragment for an equal message.
+    public byte[] toJson(Message message) {
+        return entryFor(message).json;
+    }
+
+    // A strong ETag for the message's JSON: a hash of its content, so it changes whenever the message does.
+    public String etag(Message message) {
+        Entry entry = entryFor(message);
+        String etag = entry.etag;
+        if (etag == null) {
+            etag = contentHash(entry.json);
+            entry.etag = etag;
+        }
+        return etag;
+    }
+
+    // The messages as a JSON array, joined from each message's fragment.
+    public byte[] toJson(List<Message> messages) {
+        byte[][] fragments = new byte[messages.size()][];
+        int length = 2 + Math.max(0, messages.size() - 1);  // Brackets and commas.
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = toJson(messages.get(i));
+            length += fragments[i].length;
+        }
+
+        byte[] json = new byte[length];
+        int position = 0;
+        json[position++] = '[';
+        for (int i = 0; i < fragments.length; i++) {
+            if (i > 0) {
+                json[position++] = ',';
+            }
+            System.arraycopy(fragments[i], 0, json, position, fragments[i].length);
+            position += fragments[i].length;
+        }
+        json[position] = ']';
+        return json;
+    }
+
+    // Drop the fragment for a message that was updated or deleted.
+    public void invalidate(int mId) {
+        synchronized (entries) {
+            entries.remove(mId);
+        }
+    }
+
+    private Entry entryFor(Message message) {
+        synchronized (entries) {
+            Entry entry = entries.get(message.getMessage_id());
+            if (entry != null && (entry.message == message || entry.message.equals(message))) {
+                hits.increment();
+                return entry;
+            }
+        }
+
+        misses.increment();
+        Entry entry;
+        try {
+            entry = new Entry(message, writer.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (entries) {
+            entries.put(message.getMessage_id(), entry);
+        }
+        return entry;
+    }
+
+    // First 16 bytes of the SHA-256 of json, as a quoted hex string.
+    private static String contentHash(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            StringBuilder etag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // Every JVM is required to provide SHA-256.
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+}
@@ -0,0 +1,230 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+
+import Util.Metrics;
+
+// Compresses response bodies for clients that accept it, choosing between zstd and gzip from Accept-Encoding.
+// Bodies smaller than minSize are sent as they are, since compressing them costs more than it saves. Compressed forms
+// of cacheable responses, those with an ETag, are kept in a bounded LRU so a repeated response is not compressed again.
+//
+// zstd is offered only if its native library loads on this platform; gzip is always available.
+public class ResponseCompressor {
+    // A content coding this server can produce, in order of preference.
+    public enum Encoding {
+        ZSTD("zstd"),
+        GZIP("gzip"),
+        IDENTITY("identity");
+
+        public final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+    }
+
+    // Settings, read from system properties.
+    public static class Config {
+        public boolean enabled = !"false".equalsIgnoreCase(System.getProperty("compression.enabled"));
+        public int minSize = Integer.getInteger("compression.minSize", 1024);
+        public int gzipLevel = Integer.getInteger("compression.gzipLevel", Deflater.DEFAULT_COMPRESSION);
+        public int zstdLevel = Integer.getInteger("compression.zstdLevel", 3);
+        public long cacheMaxBytes = Long.getLong("compression.cacheMaxBytes", 16L * 1024 * 1024);
+    }
+
+    // A response body and the encoding it is in.
+    public static class Body {
+        public final Encoding encoding;
+        public final byte[] bytes;
+
+        Body(Encoding encoding, byte[] bytes) {
+            this.encoding = encoding;
+            this.bytes = bytes;
+        }
+    }
+
+    // Point-in-time view of the compressed response cache.
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final int entries;
+        public final long bytes;
+
+        Stats(long hits, long misses, int entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final boolean ZSTD_AVAILABLE = loadZstd();
+
+    private final Config config;
+    private final LinkedHashMap<String, Body> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;   // Guarded by cache.
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResponseCompressor() {
+        this(new Config());
+    }
+
+    public ResponseCompressor(Config config) {
+        this.config = config;
+    }
+
+    // The preferred encoding the client accepts, from an Accept-Encoding header that may be null.
+    // Follows the q-values the client gives; among equal ones the server's order of preference wins.
+    public Encoding negotiate(String acceptEncoding) {
+        if (!config.enabled || acceptEncoding == null) {
+            return Encoding.IDENTITY;
+        }
+        Encoding best = Encoding.IDENTITY;
+        double bestQuality = 0;
+        double wildcardQuality = -1;
+        Map<Encoding, Double> qualities = new LinkedHashMap<>();
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.trim().split(";");
+            String token = fields[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (token.equals("*")) {
+                wildcardQuality = quality;
+            }
+            for (Encoding encoding : Encoding.values()) {
+                if (encoding.token.equals(token)) {
+                    qualities.put(encoding, quality);
+                }
+            }
+        }
+        for (Encoding encoding : Encoding.values()) {
+            if (encoding == Encoding.IDENTITY || (encoding == Encoding.ZSTD && !ZSTD_AVAILABLE)) {
+                continue;
+            }
+            double quality = qualities.getOrDefault(encoding, Math.max(wildcardQuality, 0));
+            if (quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    // Encode a body for a client that accepts the given encoding. Bodies under minSize are left as they are.
+    public Body encode(byte[] body, Encoding accepted) {
+        if (accepted == Encoding.IDENTITY || body.length < config.minSize) {
+            return new Body(Encoding.IDENTITY, body);
+        }
+        return new Body(accepted, compress(body, accepted));
+    }
+
+    // Compress body, recording the size reduction and time taken.
+    public byte[] compress(byte[] body, Encoding encoding) {
+        if (encoding == Encoding.IDENTITY) {
+            return body;
+        }
+        long start = System.nanoTime();
+        byte[] compressed;
+        if (encoding == Encoding.ZSTD) {
+            compressed = Zstd.compress(body, config.zstdLevel);
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (OutputStream gzip = wrap(out, Encoding.GZIP)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);  // Writing to memory does not fail.
+            }
+            compressed = out.toByteArray();
+        }
+        Metrics.recordCompression(encoding.token, body.length, compressed.length, System.nanoTime() - start);
+        return compressed;
+    }
+
+    // A stream compressing what is written to it into out, for responses of unknown size.
+    public OutputStream wrap(OutputStream out, Encoding encoding) throws IOException {
+        switch (encoding) {
+            case ZSTD:
+                return new ZstdOutputStream(out, config.zstdLevel);
+            case GZIP:
+                int level = config.gzipLevel;
+                return new GZIPOutputStream(out, 8192) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            default:
+                return out;
+        }
+    }
+
+    // The body cached under key for clients accepting the given encoding, or null if there is none. The key must
+    // change whenever the body does, as an ETag does.
+    public Body cached(String key, Encoding accepted) {
+        synchronized (cache) {
+            Body body = cache.get(accepted.token + ' ' + key);
+            if (body != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+            return body;
+        }
+    }
+
+    // Cache the body sent under key to clients accepting the given encoding, evicting the least recently used bodies
+    // beyond cacheMaxBytes.
+    public void cache(String key, Encoding accepted, Body body) {
+        if (body.bytes.length > config.cacheMaxBytes / 8) {
+            return;     // One response should not push out most of the cache.
+        }
+        synchronized (cache) {
+            Body previous = cache.put(accepted.token + ' ' + key, body);
+            cachedBytes += body.bytes.length - (previous == null ? 0 : previous.bytes.length);
+            Iterator<Body> eldest = cache.values().iterator();
+            while (cachedBytes > config.cacheMaxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().bytes.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (cache) {
+            return new Stats(hits.sum(), misses.sum(), cache.size(), cachedBytes);
+        }
+    }
+
+    private static boolean loadZstd() {
+        try {
+            Native.load();
+            return true;
+        } catch (Throwable e) {     // UnsatisfiedLinkError or similar on platforms without a bundled library.
+            System.err.println("zstd is not available, responses will use gzip only: " + e);
+            return false;
+        }
+    }
+}
@@ -1,133 +1,913 @@
 package Controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper; // Library for JSON processing.
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import DAO.MessageDAO;
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageTimeRange;
 import Service.AccountService;
+import Service.AuthTokens;
+import Service.FeedService;
+import Service.ForbiddenException;
+import Service.MessageCache;
+import Service.MessageSearchIndex;
 import Service.MessageService;
+import Service.MessageWriteBehind;
+import Service.TimelineCache;
+import Service.TimelineVersions;
+import Service.TooManyRequestsException;
+import Service.UnauthorizedException;
+import Util.HashingExecutor;
+import Util.Metrics;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 // Social Media controller class for handling API endpoints related to social media api functionality.
 public class SocialMediaController {
+    // Page size used for GET /messages when "after" is given without "limit", and the largest page a client may ask for.
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Messages written by a streamed response without a "limit", and the most a client may ask for in one.
+    private static final int MAX_STREAM_SIZE = 100_000;
+    // Results returned by GET /messages/search without a "limit", and the most a client may ask for.
+    private static final int DEFAULT_SEARCH_RESULTS = 20;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    // Messages returned by GET /accounts/{account_id}/feed without a "limit", and the most a client may ask for.
+    private static final int DEFAULT_FEED_SIZE = 20;
+    private static final int MAX_FEED_SIZE = 100;
+    // Response header carrying the "after" value for the next page of GET /messages, with or without a time range.
+    // A streamed response sends it as a trailer instead.
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // Request attribute holding the exception a handler caught, so route metrics can count it by type.
+    private static final String ERROR_ATTRIBUTE = "error";
+    // Differs between runs of the server, so list ETags, built from counters that restart at zero, never repeat.
+    private static final String ETAG_PREFIX = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    // Request attribute holding the route and start time, read when the response is complete.
+    private static final String TIMING_ATTRIBUTE = "routeTiming";
+    // Response header carrying the bearer token issued at login.
+    private static final String AUTH_TOKEN_HEADER = "X-Auth-Token";
+    // Largest request body read, in bytes. A batch of the most messages allowed fits well within it.
+    private static final long MAX_REQUEST_BYTES = Long.getLong("server.maxRequestBytes", 1024L * 1024);
+
+    // Starts the service call behind an asynchronous handler. May throw, for example while reading the request body.
+    private interface AsyncWork<T> {
+        CompletableFuture<T> start() throws Exception;
+    }
+
+    // Reads the messages of a streamed response, handing each to the handler as it is read. Returns false if the read
+    // failed part way.
+    private interface MessageSource {
+        boolean read(MessageDAO.MessageHandler handler) throws IOException;
+    }
+
+    // Writes the first limit messages it is handed to a streamed response, and keeps the cursor for the next page if
+    // it is handed more.
+    private static class StreamedPage implements MessageDAO.MessageHandler {
+        private final JsonGenerator generator;
+        private final WireFormat format;
+        private final int limit;
+        private final Function<Message, String> cursorOf;
+        private int written;
+        private Message last;
+        String nextCursor;
+
+        StreamedPage(JsonGenerator generator, WireFormat format, int limit, Function<Message, String> cursorOf) {
+            this.generator = generator;
+            this.format = format;
+            this.limit = limit;
+            this.cursorOf = cursorOf;
+        }
+
+        @Override
+        public void handle(Message message) throws IOException {
+            if (written < limit) {
+                format.writer(Message.class).writeValue(generator, message);
+                written++;
+                last = message;
+            } else if (nextCursor == null) {
+                nextCursor = cursorOf.apply(last);
+            }
+        }
+    }
+
+    // The route a request matched and when it started.
+    private static class RouteTiming {
+        final Metrics.Route route;
+        final long startNanos;
+
+        RouteTiming(Metrics.Route route, long startNanos) {
+            this.route = route;
+            this.startNanos = startNanos;
+        }
+    }
+
     private final AccountService accountService;
     private final MessageService messageService;
-    private final ObjectMapper mapper;
+    private final FeedService feedService;
+    private final MessageJsonCache jsonCache;   // Messages already serialized for responses.
+    private final ResponseCompressor compressor;
+    private final LoginRateLimiter loginLimiter;
+    private final AuthTokens authTokens;
+    // Whether writes may be made without a token, on behalf of any account, as they were before tokens existed. Off
+    // unless auth.optional is set, for a deployment still moving its clients over; a token that is sent is checked
+    // either way.
+    private final boolean authOptional = Boolean.getBoolean("auth.optional");
+    // Most messages returned by GET /messages without "limit", "after" or "stream". A longer table is cut off there,
+    // with the cursor for the rest in X-Next-Cursor, so one request never loads an unbounded table into memory.
+    private final int maxListSize = Integer.getInteger("messages.maxListSize", 10_000);
+
+    // Lets a compressing stream be closed to finish its output without closing the response stream under it, which
+    // Javalin still owns.
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    // A request body was larger than MAX_REQUEST_BYTES.
+    private static class RequestTooLargeException extends IOException {
+        RequestTooLargeException() {
+            super("Request body is larger than " + MAX_REQUEST_BYTES + " bytes");
+        }
+    }
+
+    // Fails a read that goes past MAX_REQUEST_BYTES, for bodies sent without a Content-Length.
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining = MAX_REQUEST_BYTES;
+
+        BoundedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0 && --remaining < 0) {
+                throw new RequestTooLargeException();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = in.read(bytes, offset, length);
+            if (read > 0 && (remaining -= read) < 0) {
+                throw new RequestTooLargeException();
+            }
+            return read;
+        }
+    }
 
     public SocialMediaController() {
         this.accountService = new AccountService();
-        this.messageService = new MessageService();
-        this.mapper = new ObjectMapper();
+        this.messageService = new MessageService(accountService);
+        this.feedService = new FeedService(accountService, messageService);
+        this.jsonCache = new MessageJsonCache(WireFormat.JSON.mapper);
+        this.compressor = new ResponseCompressor();
+        this.loginLimiter = new LoginRateLimiter();
+        this.authTokens = new AuthTokens();
+        messageService.addInvalidationListener(jsonCache::invalidate);
     }
 
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        return startAPI(ThreadMode.configured());
+    }
+
+    // Build the app with request handlers running on platform threads or on virtual threads.
+    public Javalin startAPI(ThreadMode threadMode) {
+        Javalin app = Javalin.create(config -> {
+            config.jetty.server(() -> new Server(threadMode.jettyThreadPool()));
+            config.compression.none();  // Responses are compressed by ResponseCompressor, which also caches them.
+        });
 
         //Below are the endpoints for this program
-        app.post("/register", this::registerHandler);
-        app.post("/login", this::loginHandler);
-        app.post("/messages", this::createMessageHandler);
-        app.get("/messages", this::retrieveAllMessagesHandler);
-        app.get("/messages/{message_id}", this::retrieveMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByMessageIdHandler);
-        app.patch("/messages/{message_id}", this::updateMessageByMessageIdHandler);
-        app.get("/accounts/{account_id}/messages", this::retrieveAllMessagesForUserHandler);
+        route(app, HandlerType.POST, "/register", this::registerHandler);
+        route(app, HandlerType.POST, "/login", this::loginHandler);
+        route(app, HandlerType.POST, "/messages", this::createMessageHandler);
+        route(app, HandlerType.POST, "/messages/batch", this::createMessagesHandler);
+        route(app, HandlerType.GET, "/messages", this::retrieveAllMessagesHandler);
+        route(app, HandlerType.GET, "/messages/search", this::searchMessagesHandler);  // Before {message_id}, which would match it.
+        route(app, HandlerType.GET, "/messages/{message_id}", this::retrieveMessageByIdHandler);
+        route(app, HandlerType.DELETE, "/messages/{message_id}", this::deleteMessageByMessageIdHandler);
+        route(app, HandlerType.PATCH, "/messages/{message_id}", this::updateMessageByMessageIdHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/messages", this::retrieveAllMessagesForUserHandler);
+        route(app, HandlerType.PUT, "/accounts/{account_id}/following/{followee_id}", this::followHandler);
+        route(app, HandlerType.DELETE, "/accounts/{account_id}/following/{followee_id}", this::unfollowHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/following", this::retrieveFollowingHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/followers", this::retrieveFollowersHandler);
+        route(app, HandlerType.GET, "/accounts/{account_id}/feed", this::retrieveFeedHandler);
+        app.get("/metrics", this::metricsHandler);
+        app.after(this::endRoute);
+        app.events(event -> event.serverStopped(messageService::close));   // The write-behind queue outlives the app.
 
         return app;
     }
 
-    // Handler method for the "/register" endpoint.
-    private void registerHandler(Context context) {
+    // Register a handler and record its latency, in-flight count, responses by status and caught exceptions by type.
+    // The measurement ends in an after-handler, which Javalin runs once an asynchronous handler's future completes.
+    private void route(Javalin app, HandlerType method, String path, Handler handler) {
+        Metrics.Route route = Metrics.route(method + " " + path);
+        app.addHandler(method, path, context -> {
+            context.attribute(TIMING_ATTRIBUTE, new RouteTiming(route, System.nanoTime()));
+            route.begin();
+            try {
+                handler.handle(context);
+            } catch (Exception e) {
+                context.attribute(ERROR_ATTRIBUTE, e);
+                throw e;
+            }
+        });
+    }
+
+    // After-handler for every request: finish the route measurement started in route().
+    private void endRoute(Context context) {
+        RouteTiming timing = context.attribute(TIMING_ATTRIBUTE);
+        if (timing == null) {
+            return;     // Not a timed route, e.g. /metrics or a 404.
+        }
+        Throwable error = context.attribute(ERROR_ATTRIBUTE);
+        if (error != null) {
+            timing.route.recordError(error);
+        }
+        timing.route.end(context.statusCode(), timing.startNanos);
+    }
+
+    // Set an error status and keep the exception that caused it for the route metrics.
+    private void failed(Context context, int status, Throwable e) {
+        context.attribute(ERROR_ATTRIBUTE, e);
+        context.status(status);
+        if (e instanceof TooManyRequestsException && ((TooManyRequestsException) e).getRetryAfterMillis() > 0) {
+            long millis = ((TooManyRequestsException) e).getRetryAfterMillis();
+            context.header("Retry-After", String.valueOf((millis + 999) / 1000));
+        }
+    }
+
+    // Run a service call without holding the request thread while it waits on the database. onSuccess writes the
+    // response; a failure sets failureStatus, 429 if a queue turned the request away, or 503 if the database or hashing
+    // executor is saturated and rejected the work.
+    private <T> void respondAsync(Context context, int failureStatus, AsyncWork<T> work, Consumer<T> onSuccess) {
+        CompletableFuture<T> future;
         try {
-            Account account = mapper.readValue(context.body(), Account.class);  // Parse JSON request body to Account object.
-            Account createdAccount = accountService.register(account);
-            context.json(createdAccount).status(200);   // Return created account as JSON with 200 status.
+            future = work.start();
         } catch (Exception e) {
-            context.status(400);    // Return 400 status if an error occurs during registration.
+            failed(context, statusFor(e, failureStatus), e);
+            return;
+        }
+        context.future(() -> future.handle((result, error) -> {
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                failed(context, statusFor(cause, failureStatus), cause);
+            }
+            return null;
+        }));
+    }
+
+    // The status for a failed request: 401 or 403 for a missing or wrong token, 413 for an oversized body, 429 or 503
+    // for load shedding, otherwise the route's own failure status.
+    private static int statusFor(Throwable cause, int failureStatus) {
+        return cause instanceof UnauthorizedException ? 401
+                : cause instanceof ForbiddenException ? 403
+                : cause instanceof RequestTooLargeException ? 413
+                : cause instanceof TooManyRequestsException ? 429
+                : cause instanceof RejectedExecutionException ? 503 : failureStatus;
+    }
+
+    // The account the request's bearer token was issued to, or null if it carries no token and auth.optional is set.
+    // Checking a token is a signature check in memory; it never queries the database.
+    private Integer authenticate(Context context) {
+        String authorization = context.header("Authorization");
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            if (!authOptional) {
+                throw new UnauthorizedException("Error: A bearer token is required");
+            }
+            return null;
         }
+        int accountId = authTokens.verify(authorization.substring(7).trim());
+        if (accountId < 0) {
+            throw new UnauthorizedException("Error: The token is invalid or expired");
+        }
+        return accountId;
     }
 
-    // Handler method for the "/login" endpoint. Logs in an existing user.
-    private void loginHandler(Context context) {
+    // Refuse a request made with one account's token on behalf of another.
+    private static void requireAccount(Integer principal, int accountId) {
+        if (principal != null && principal != accountId) {
+            throw new ForbiddenException("Error: The token belongs to another account");
+        }
+    }
+
+    // Completes once every account among postedBy is known to be the principal or not to exist, and fails with
+    // ForbiddenException otherwise. A message for an account that does not exist is left for validation to refuse with
+    // 400, as it was before tokens. Known accounts are answered from memory.
+    private CompletableFuture<Void> requirePosters(Integer principal, Collection<Integer> postedBy) {
+        if (principal == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(postedBy.stream()
+                .filter(accountId -> accountId != principal.intValue())
+                .map(accountId -> accountService.accountExistsAsync(accountId).thenAccept(exists -> {
+                    if (exists) {
+                        requireAccount(principal, accountId);
+                    }
+                }))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    // Completes once the message is known to belong to the principal, or is missing, and fails with ForbiddenException
+    // otherwise. The lookup is usually answered by the message cache.
+    private CompletableFuture<Void> requireOwner(Integer principal, int mId) {
+        if (principal == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return messageService.retrieveMessageByIdAsync(mId).thenAccept(message -> {
+            if (message != null) {
+                requireAccount(principal, message.getPosted_by());
+            }
+        });
+    }
+
+    // Read the request body in the format its Content-Type names, JSON unless it is a binary one. The body is parsed
+    // as it arrives rather than first copied into a String or array, and one larger than MAX_REQUEST_BYTES is refused,
+    // up front if it declares its length.
+    private <T> T readBody(Context context, Class<T> type) throws IOException {
+        return WireFormat.ofContentType(context.contentType()).reader(type).readValue(bodyStream(context));
+    }
+
+    private <T> T readBody(Context context, TypeReference<T> type) throws IOException {
+        return WireFormat.ofContentType(context.contentType()).reader(type).readValue(bodyStream(context));
+    }
+
+    private static InputStream bodyStream(Context context) throws IOException {
+        if (context.req().getContentLengthLong() > MAX_REQUEST_BYTES) {
+            throw new RequestTooLargeException();
+        }
+        return new BoundedInputStream(context.bodyInputStream());
+    }
+
+    // Write a message, or a list of messages, as the response body. JSON comes from the cached serialized form.
+    private void respond(Context context, Message message) {
+        WireFormat format = responseFormat(context);
+        respond(context, format, format == WireFormat.JSON ? jsonCache.toJson(message) : encode(format, message));
+    }
+
+    private void respond(Context context, List<Message> messages) {
+        WireFormat format = responseFormat(context);
+        respond(context, format, encode(format, messages));
+    }
+
+    private void respond(Context context, Object value) {
+        WireFormat format = responseFormat(context);
+        respond(context, format, encode(format, value));
+    }
+
+    // Write an encoded body, compressed if the client accepts it and it is large enough to be worth it.
+    private void respond(Context context, WireFormat format, byte[] encoded) {
+        send(context, format, compressor.encode(encoded, acceptedEncoding(context)));
+    }
+
+    private byte[] encode(WireFormat format, List<Message> messages) {
+        return format == WireFormat.JSON ? jsonCache.toJson(messages) : encode(format, (Object) messages);
+    }
+
+    private byte[] encode(WireFormat format, Object value) {
         try {
-            Account account = mapper.readValue(context.body(), Account.class);
-            Account createdAccount = accountService.login(account);
-            context.json(createdAccount).status(200);   // Return logged-in account as JSON with 200 status.
-        } catch (Exception e) {
-            context.status(401);     // Return 401 status if login fails or credentials are invalid.
+            return format.writer(value.getClass()).writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
+    private WireFormat responseFormat(Context context) {
+        return WireFormat.negotiate(context.header("Accept"));
+    }
+
+    // A response's ETag for the format it is sent in, as each format is a different representation.
+    private static String etagFor(WireFormat format, String etag) {
+        if (format == WireFormat.JSON) {
+            return etag;
+        }
+        return etag.substring(0, etag.length() - 1) + "-" + format.name().toLowerCase() + "\"";
+    }
+
+    private ResponseCompressor.Encoding acceptedEncoding(Context context) {
+        context.header("Vary", "Accept, Accept-Encoding");
+        return compressor.negotiate(context.header("Accept-Encoding"));
+    }
+
+    private void send(Context context, WireFormat format, ResponseCompressor.Body body) {
+        if (body.encoding != ResponseCompressor.Encoding.IDENTITY) {
+            context.header("Content-Encoding", body.encoding.token);
+        }
+        context.status(200).contentType(format.mediaType).result(body.bytes);
+    }
+
+    // Set the validators for a response and check them against the request's conditional headers.
+    // Returns true if the client's copy is current, in which case the response is a bodyless 304.
+    private boolean notModified(Context context, String etag, Long lastModifiedMillis) {
+        context.header("ETag", etag);
+        if (lastModifiedMillis != null) {
+            context.header("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    Instant.ofEpochMilli(lastModifiedMillis).atZone(ZoneOffset.UTC)));
+        }
+
+        String ifNoneMatch = context.header("If-None-Match");
+        boolean current;
+        if (ifNoneMatch != null) {
+            current = false;
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);     // If-None-Match uses the weak comparison.
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    current = true;
+                    break;
+                }
+            }
+        } else {
+            String ifModifiedSince = context.header("If-Modified-Since");
+            try {
+                current = ifModifiedSince != null && lastModifiedMillis != null
+                        && lastModifiedMillis / 1000 <= ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            } catch (DateTimeParseException e) {
+                current = false;    // An unreadable date is ignored.
+            }
+        }
+
+        if (current) {
+            context.status(304);
+        }
+        return current;
+    }
+
+    // Handler method for the "/metrics" endpoint. Exposes request, DAO, pool and cache metrics for Prometheus.
+    private void metricsHandler(Context context) {
+        StringBuilder out = new StringBuilder(Metrics.scrape());
+        MessageCache.Stats cache = messageService.getCacheStats();
+        Metrics.counter(out, "message_cache_hits_total", "Message lookups answered from the cache.", cache.hits);
+        Metrics.counter(out, "message_cache_misses_total", "Message lookups that loaded from the database.", cache.misses);
+        Metrics.counter(out, "message_cache_negative_hits_total", "Lookups answered by a cached missing id.", cache.negativeHits);
+        Metrics.counter(out, "message_cache_evictions_total", "Messages evicted from the cache.", cache.evictions);
+        Metrics.counter(out, "message_cache_load_seconds_total", "Time spent loading messages on cache misses.", cache.totalLoadNanos / 1e9);
+        Metrics.gauge(out, "message_cache_size", "Entries in the message cache.", cache.size);
+        MessageJsonCache.Stats json = jsonCache.getStats();
+        Metrics.counter(out, "message_json_cache_hits_total", "Messages written from already serialized JSON.", json.hits);
+        Metrics.counter(out, "message_json_cache_misses_total", "Messages serialized for a response.", json.misses);
+        Metrics.counter(out, "message_json_cache_evictions_total", "Serialized messages evicted from the cache.", json.evictions);
+        Metrics.gauge(out, "message_json_cache_size", "Serialized messages in the cache.", json.size);
+        ResponseCompressor.Stats compressed = compressor.getStats();
+        Metrics.counter(out, "compressed_response_cache_hits_total", "List responses sent from the response cache.", compressed.hits);
+        Metrics.counter(out, "compressed_response_cache_misses_total", "List responses that had to be built.", compressed.misses);
+        Metrics.gauge(out, "compressed_response_cache_bytes", "Bytes of responses in the response cache.", compressed.bytes);
+        TimelineCache.Stats timelines = messageService.getTimelineStats();
+        Metrics.counter(out, "timeline_cache_hits_total", "Account timeline reads that found the timeline cached.", timelines.hits);
+        Metrics.counter(out, "timeline_cache_misses_total", "Account timeline reads that loaded the timeline.", timelines.misses);
+        Metrics.counter(out, "timeline_cache_fallbacks_total", "Account timeline reads answered by the database.", timelines.fallbacks);
+        Metrics.counter(out, "timeline_cache_evictions_total", "Account timelines evicted from the cache.", timelines.evictions);
+        Metrics.gauge(out, "timeline_cache_accounts", "Account timelines in the cache.", timelines.accounts);
+        MessageWriteBehind.Stats writeBehind = messageService.getWriteBehindStats();
+        if (writeBehind != null) {
+            Metrics.gauge(out, "message_write_behind_pending", "Messages accepted and not yet written.", writeBehind.pending);
+            Metrics.counter(out, "message_write_behind_rejected_total", "Messages turned away because the queue was full.", writeBehind.rejected);
+            Metrics.counter(out, "message_write_behind_flushes_total", "Batches written by the write-behind writer.", writeBehind.flushes);
+            Metrics.counter(out, "message_write_behind_flushed_total", "Messages written by the write-behind writer.", writeBehind.flushed);
+            Metrics.counter(out, "message_write_behind_flush_failures_total", "Batches that failed to write and were retried.", writeBehind.flushFailures);
+            Metrics.counter(out, "message_write_behind_dead_lettered_total", "Messages the database refused, moved to the dead-letter journal.", writeBehind.deadLettered);
+        }
+        MessageSearchIndex.Stats search = messageService.getSearchStats();
+        Metrics.gauge(out, "search_index_terms", "Distinct terms in the message search index.", search.terms);
+        Metrics.gauge(out, "search_index_messages", "Messages in the message search index.", search.messages);
+        Metrics.gauge(out, "search_index_postings", "Term occurrences listed in the message search index.", search.postings);
+        FeedService.Stats feeds = feedService.getStats();
+        Metrics.gauge(out, "feed_inboxes", "Home feed inboxes held in memory.", feeds.inboxes);
+        Metrics.gauge(out, "feed_pulled_authors", "Authors merged into feeds on read instead of fanned out on write.", feeds.pulledAuthors);
+        Metrics.counter(out, "feed_inbox_hits_total", "Feed reads answered from an inbox in memory.", feeds.hits);
+        Metrics.counter(out, "feed_inbox_builds_total", "Feed reads that built an inbox from the database.", feeds.builds);
+        Metrics.counter(out, "feed_fanout_pushes_total", "Message ids pushed into inboxes when posted.", feeds.pushes);
+        Metrics.counter(out, "feed_fanin_pulls_total", "Author timelines merged into feeds when read.", feeds.pulls);
+        LoginRateLimiter.Stats logins = loginLimiter.getStats();
+        Metrics.counter(out, "login_attempts_allowed_total", "Login attempts let through by the rate limiter.", logins.allowed);
+        Metrics.counter(out, "login_attempts_rejected_by_address_total", "Login attempts turned away by the per-address limit.", logins.rejectedByAddress);
+        Metrics.counter(out, "login_attempts_rejected_by_username_total", "Login attempts turned away by the per-username limit.", logins.rejectedByUsername);
+        Metrics.gauge(out, "password_hash_queued", "Password hashes waiting for a hashing thread.", HashingExecutor.queued());
+        Metrics.counter(out, "password_hash_rejected_total", "Password hashes turned away because the queue was full.", HashingExecutor.rejected());
+        context.contentType("text/plain; version=0.0.4; charset=utf-8").result(out.toString());
+    }
+
+    // Handler method for the "/register" endpoint.
+    // Responds 400 if an error occurs during registration.
+    private void registerHandler(Context context) {
+        respondAsync(context, 400,
+                () -> accountService.registerAsync(readBody(context, Account.class)),
+                createdAccount -> respond(context, createdAccount));   // Return created account with 200 status.
+    }
+
+    // Handler method for the "/login" endpoint. Logs in an existing user.
+    // Sends a bearer token for later requests in the X-Auth-Token header.
+    // Responds 401 if login fails or credentials are invalid.
+    // Responds 429 with Retry-After, before looking the account up, if the address or username has made too many attempts.
+    private void loginHandler(Context context) {
+        respondAsync(context, 401, () -> {
+            Account account = readBody(context, Account.class);
+            loginLimiter.acquire(context.ip(), account.getUsername());
+            return accountService.loginAsync(account);
+        }, account -> {
+            context.header(AUTH_TOKEN_HEADER, authTokens.issue(account.getAccount_id()));
+            context.header("Cache-Control", "no-store");
+            respond(context, account);   // Return logged-in account with 200 status.
+        });
+    }
+
     // Handler method for the "/messages" endpoint. Creates a new message.
+    // Responds 400 if an error occurs during message creation.
     private void createMessageHandler(Context context) {
+        respondAsync(context, 400, () -> {
+            Integer principal = authenticate(context);
+            Message message = readBody(context, Message.class);
+            return requirePosters(principal, List.of(message.getPosted_by()))
+                    .thenCompose(owned -> messageService.createMessageAsync(message));
+        }, createdMessage -> respond(context, createdMessage));   // Return created message with 200 status.
+    }
+
+    // Handler method for the "/messages/batch" endpoint. Creates several messages in one transaction.
+    // Responds 200 with one result per submitted message, even if some of them were rejected.
+    // Responds 400 if the batch could not be read or is empty or too large.
+    private void createMessagesHandler(Context context) {
+        respondAsync(context, 400, () -> {
+            Integer principal = authenticate(context);
+            List<Message> messages = readBody(context, new TypeReference<List<Message>>() {});
+            return requirePosters(principal, messages.stream().map(Message::getPosted_by).collect(Collectors.toSet()))
+                    .thenCompose(owned -> messageService.createMessagesAsync(messages));
+        }, (List<MessageBatchResult> results) -> respond(context, results));
+    }
+
+    // Handler method for the "/messages" endpoint. Retrieves all messages, in message_id order, up to maxListSize of
+    // them; if there are more, the X-Next-Cursor header holds the "after" value for the rest.
+    // Optional query parameters: "limit" and "after" return one page ordered by message_id, with the cursor for the
+    // next page in the X-Next-Cursor header; "stream=true" writes rows to the response as they are read.
+    // "since" and "until" narrow the messages to a time range, as described at retrieveMessagesInTimeRange.
+    private void retrieveAllMessagesHandler(Context context) {
+        if (context.queryParam("since") != null || context.queryParam("until") != null) {
+            retrieveMessagesInTimeRange(context, null);
+            return;
+        }
+        String limitParam = context.queryParam("limit");
+        String afterParam = context.queryParam("after");
+        boolean stream = Boolean.parseBoolean(context.queryParam("stream"));
+        if (limitParam == null && afterParam == null && !stream) {
+            respondPage(context, maxListSize, () -> messageService.retrieveMessagesAfterAsync(0, maxListSize + 1),
+                    message -> String.valueOf(message.getMessage_id()));   // Return list of messages with 200 status.
+            return;
+        }
+
+        int after;
+        int limit;
         try {
-            Message message = mapper.readValue(context.body(), Message.class);
-            Message createdMessage = messageService.createMessage(message);
-            context.json(createdMessage).status(200);   // Return created message as JSON with 200 status.
-        } catch (Exception e) {
-            context.status(400);         // Return 400 status if an error occurs during message creation.
+            after = afterParam == null ? 0 : Integer.parseInt(afterParam);
+            limit = limitParam == null ? (stream ? MAX_STREAM_SIZE : DEFAULT_PAGE_SIZE) : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            failed(context, 400, e);
+            return;
+        }
+        if (limit < 1 || limit > (stream ? MAX_STREAM_SIZE : MAX_PAGE_SIZE)) {
+            context.status(400);
+            return;
         }
+
+        if (stream) {     // Streaming writes from the request thread as rows are read, so it stays synchronous.
+            streamMessages(context, limit, message -> String.valueOf(message.getMessage_id()),
+                    handler -> messageService.streamMessagesAfter(after, limit + 1, handler));
+            return;
+        }
+
+        respondPage(context, limit, () -> messageService.retrieveMessagesAfterAsync(after, limit + 1),
+                message -> String.valueOf(message.getMessage_id()));
     }
 
-    // Handler method for the "/messages" endpoint. Retrieves all messages.
-    private void retrieveAllMessagesHandler(Context context) {
-        List<Message> messages = messageService.retrieveAllMessages();  // Call service layer to get all messages.
-        context.json(messages).status(200);         // Return list of messages as JSON with 200 status.
+    // Respond with up to limit messages from a query for limit + 1 of them, with the cursor for the next page in the
+    // X-Next-Cursor header if the extra one came back. The extra row tells whether another page follows without a
+    // second query.
+    private void respondPage(Context context, int limit, AsyncWork<List<Message>> query, Function<Message, String> cursorOf) {
+        respondAsync(context, 500, query, page -> {
+            if (page.size() > limit) {
+                page.remove(limit);
+                context.header(NEXT_CURSOR_HEADER, cursorOf.apply(page.get(limit - 1)));
+            }
+            respond(context, page);
+        });
     }
 
-    // Handler method for the "/messages/{message_id}" endpoint. Retrieves a specific message by ID.
-    private void retrieveMessageByIdHandler(Context context) {
-        try {
-            int mId = Integer.parseInt(context.pathParam("message_id"));
-            Message message = messageService.retrieveMessageById(mId);
-            if (message != null) {
-                context.json(message).status(200);  // Return message as JSON with 200 status if found.
-            } else {
-                context.status(200);
+    // Write up to limit messages straight from the database to the response as an array, one row at a time.
+    // The source reads one message more to learn whether another page follows, the way a page fetches limit + 1 rows.
+    // By then the headers are sent, so the cursor goes in an X-Next-Cursor trailer, which HTTP/1.1 clients that ask
+    // with "TE: trailers" receive; others can page on from the last message they got.
+    // A read that fails part way aborts the response instead of ending the array, so the client sees a cut-off
+    // response rather than what looks like a complete, shorter list.
+    // The size is not known up front, so the response is compressed whenever the client accepts it.
+    private void streamMessages(Context context, int limit, Function<Message, String> cursorOf, MessageSource source) {
+        WireFormat format = responseFormat(context);
+        ResponseCompressor.Encoding encoding = acceptedEncoding(context);
+        if (encoding != ResponseCompressor.Encoding.IDENTITY) {
+            context.header("Content-Encoding", encoding.token);
+        }
+        Map<String, String> trailers = new HashMap<>();     // Read by Jetty after the handler returns.
+        if (context.req().getProtocol().equals("HTTP/1.1")) {
+            context.header("Trailer", NEXT_CURSOR_HEADER);
+            context.res().setTrailerFields(() -> trailers);
+        }
+        context.status(200).contentType(format.mediaType);
+        try (OutputStream out = compressor.wrap(new NonClosingOutputStream(context.outputStream()), encoding);
+             JsonGenerator generator = format.mapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            StreamedPage page = new StreamedPage(generator, format, limit, cursorOf);
+            if (!source.read(page)) {
+                Request.getBaseRequest(context.req()).getHttpChannel()
+                        .abort(new IOException("Error: The message query failed part way through the response"));
+                return;
             }
-        } catch (Exception e) {
+            generator.writeEndArray();
+            if (page.nextCursor != null) {
+                trailers.put(NEXT_CURSOR_HEADER, page.nextCursor);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();    // The client went away mid-response; nothing more can be sent.
+        }
+    }
+
+    // Respond with the messages posted in the time range given by "since" and "until", epoch times in the same units
+    // as time_posted_epoch. since is included and until is not; either may be left out. The messages come in
+    // time_posted_epoch order, then message_id order, and are paged and streamed with "limit", "after" and "stream"
+    // like GET /messages. Here the cursor in X-Next-Cursor is "<time_posted_epoch>:<message_id>".
+    // postedBy narrows the range to one account, or is null for every account.
+    // Responds 400 if a parameter does not parse, since is after until, or limit is out of range.
+    private void retrieveMessagesInTimeRange(Context context, Integer postedBy) {
+        String limitParam = context.queryParam("limit");
+        boolean stream = Boolean.parseBoolean(context.queryParam("stream"));
+        MessageTimeRange range;
+        int limit;
+        try {
+            range = parseTimeRange(context, postedBy);
+            limit = limitParam == null ? (stream ? MAX_STREAM_SIZE : DEFAULT_PAGE_SIZE) : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            failed(context, 400, e);
+            return;
+        }
+        if (range.since > range.until || limit < 1 || limit > (stream ? MAX_STREAM_SIZE : MAX_PAGE_SIZE)) {
             context.status(400);
+            return;
         }
+
+        if (stream) {     // Streaming writes from the request thread as rows are read, so it stays synchronous.
+            streamMessages(context, limit, SocialMediaController::timeCursor,
+                    handler -> messageService.streamMessagesInTimeRange(range, limit + 1, handler));
+            return;
+        }
+
+        respondPage(context, limit, () -> messageService.retrieveMessagesInTimeRangeAsync(range, limit + 1),
+                SocialMediaController::timeCursor);
+    }
+
+    // The time range and cursor given by the "since", "until" and "after" query parameters.
+    private static MessageTimeRange parseTimeRange(Context context, Integer postedBy) {
+        String sinceParam = context.queryParam("since");
+        String untilParam = context.queryParam("until");
+        String afterParam = context.queryParam("after");
+        long since = sinceParam == null ? Long.MIN_VALUE : Long.parseLong(sinceParam);
+        long until = untilParam == null ? Long.MAX_VALUE : Long.parseLong(untilParam);
+        if (afterParam == null) {
+            return new MessageTimeRange(postedBy, since, until);
+        }
+        int separator = afterParam.indexOf(':');
+        if (separator < 0) {
+            throw new NumberFormatException("Cursor is not <time_posted_epoch>:<message_id>: " + afterParam);
+        }
+        return new MessageTimeRange(postedBy, since, until, Long.parseLong(afterParam, 0, separator, 10),
+                Integer.parseInt(afterParam, separator + 1, afterParam.length(), 10));
+    }
+
+    // The cursor for the page of a time range that follows the given message.
+    private static String timeCursor(Message message) {
+        return message.getTime_posted_epoch() + ":" + message.getMessage_id();
+    }
+
+    // Handler method for the "/messages/search" endpoint. Finds the messages containing every word of "q", best match
+    // first. Optional query parameter: "limit", the most messages to return.
+    // Responds 400 if q is missing or blank or limit is out of range.
+    private void searchMessagesHandler(Context context) {
+        String query = context.queryParam("q");
+        String limitParam = context.queryParam("limit");
+        int limit;
+        try {
+            limit = limitParam == null ? DEFAULT_SEARCH_RESULTS : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            failed(context, 400, e);
+            return;
+        }
+        if (query == null || query.isBlank() || limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            context.status(400);
+            return;
+        }
+        respondAsync(context, 500, () -> messageService.searchMessagesAsync(query, limit),
+                messages -> respond(context, messages));   // Return matching messages with 200 status.
+    }
+
+    // Handler method for the "/messages/{message_id}" endpoint. Retrieves a specific message by ID.
+    private void retrieveMessageByIdHandler(Context context) {
+        respondAsync(context, 400,
+                () -> messageService.retrieveMessageByIdAsync(Integer.parseInt(context.pathParam("message_id"))),
+                message -> {
+                    if (message != null) {
+                        if (!notModified(context, etagFor(responseFormat(context), jsonCache.etag(message)), null)) {
+                            respond(context, message);  // Return message with 200 status if found.
+                        }
+                    } else {
+                        context.status(200);
+                    }
+                });
     }
 
     // Handler method for the "/messages/{message_id}" endpoint. Deletes a message by ID.
     private void deleteMessageByMessageIdHandler(Context context) {
-        try {
+        respondAsync(context, 400, () -> {
+            Integer principal = authenticate(context);
             int mId = Integer.parseInt(context.pathParam("message_id"));
-            Message deletedMessage = messageService.deleteMessageByMessageId(mId);
+            return requireOwner(principal, mId).thenCompose(owned -> messageService.deleteMessageByMessageIdAsync(mId));
+        }, deletedMessage -> {
             if (deletedMessage != null) {
-                context.json(deletedMessage).status(200);
+                respond(context, deletedMessage);
             } else {
                 context.status(200);
             }
-        } catch (Exception e) {
-            context.status(400);
-        }
+        });
     }
 
     // Handler method for the "/messages/{message_id}" endpoint. Updates an existing message by ID.
     private void updateMessageByMessageIdHandler(Context context) {
-        try {
+        respondAsync(context, 400, () -> {
+            Integer principal = authenticate(context);
             int mId = Integer.parseInt(context.pathParam("message_id"));
-            Message message = mapper.readValue(context.body(), Message.class);
-            Message updatedMessage = messageService.updateMessageByMessageId(mId, message.getMessage_text());
-            context.json(updatedMessage).status(200);   // Return updated message as JSON with 200 status
-        } catch (Exception e) {
-            context.status(400);
-        }
+            Message message = readBody(context, Message.class);
+            return requireOwner(principal, mId)
+                    .thenCompose(owned -> messageService.updateMessageByMessageIdAsync(mId, message.getMessage_text()));
+        }, updatedMessage -> respond(context, updatedMessage));   // Return updated message with 200 status
     }
 
     // Handler method for the "/accounts/{account_id}/messages" endpoint. Retrieves all messages for a specific user ID.
+    // Optional query parameter: "limit" returns only that many of the newest messages, newest first.
+    // "since" and "until" instead read a time range of the account's messages, as described at
+    // retrieveMessagesInTimeRange.
+    // Responds 304 without querying when the client's ETag or Last-Modified shows it has the current list.
     private void retrieveAllMessagesForUserHandler(Context context) {
+        int userId;
         try {
-            int userId = Integer.parseInt(context.pathParam("account_id"));
-            List<Message> messages = messageService.retrieveAllMessagesForUserId(userId);
-            context.json(messages).status(200); // Return list of messages as JSON with 200 status.
-        } catch (Exception e) {
-            context.status(200);
+            userId = Integer.parseInt(context.pathParam("account_id"));
+        } catch (NumberFormatException e) {
+            failed(context, 200, e);
+            return;
+        }
+        if (context.queryParam("since") != null || context.queryParam("until") != null) {
+            retrieveMessagesInTimeRange(context, userId);
+            return;
+        }
+
+        String limitParam = context.queryParam("limit");
+        int limit = 0;
+        if (limitParam != null) {
+            try {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e) {
+                failed(context, 400, e);
+                return;
+            }
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                context.status(400);
+                return;
+            }
+        }
+
+        // Read the version before the messages: a write in between then makes the ETag older than the body, never newer.
+        TimelineVersions.Version version = messageService.getTimelineVersion(userId);
+        WireFormat format = responseFormat(context);
+        String etag = etagFor(format, "\"" + ETAG_PREFIX + "-" + userId + "-" + version.version + (limitParam == null ? "" : "-" + limit) + "\"");
+        if (notModified(context, etag, version.modifiedMillis)) {
+            return;
+        }
+
+        // The ETag identifies the list, so a body already sent for it can be sent again without a query.
+        ResponseCompressor.Encoding encoding = acceptedEncoding(context);
+        ResponseCompressor.Body cached = compressor.cached(etag, encoding);
+        if (cached != null) {
+            send(context, format, cached);
+            return;
+        }
+        Consumer<List<Message>> respond = messages -> {
+            ResponseCompressor.Body body = compressor.encode(encode(format, messages), encoding);
+            compressor.cache(etag, encoding, body);
+            send(context, format, body);    // Return list of messages with 200 status.
+        };
+        int newest = limit;
+        respondAsync(context, 200, limitParam == null
+                ? () -> messageService.retrieveAllMessagesForUserIdAsync(userId)
+                : () -> messageService.retrieveNewestMessagesForUserIdAsync(userId, newest), respond);
+    }
+
+    // Handler method for the "/accounts/{account_id}/following/{followee_id}" endpoint. Follows an account.
+    // Responds 400 if either account does not exist or both are the same account.
+    private void followHandler(Context context) {
+        respondAsync(context, 400, () -> {
+            Integer principal = authenticate(context);
+            int accountId = Integer.parseInt(context.pathParam("account_id"));
+            requireAccount(principal, accountId);
+            return feedService.followAsync(accountId, Integer.parseInt(context.pathParam("followee_id")));
+        }, done -> context.status(200));
+    }
+
+    // Handler method for the "/accounts/{account_id}/following/{followee_id}" endpoint. Stops following an account.
+    private void unfollowHandler(Context context) {
+        respondAsync(context, 400, () -> {
+            Integer principal = authenticate(context);
+            int accountId = Integer.parseInt(context.pathParam("account_id"));
+            requireAccount(principal, accountId);
+            return feedService.unfollowAsync(accountId, Integer.parseInt(context.pathParam("followee_id")));
+        }, done -> context.status(200));
+    }
+
+    // Handler method for the "/accounts/{account_id}/following" endpoint. Retrieves the ids of the accounts followed.
+    private void retrieveFollowingHandler(Context context) {
+        respondAsync(context, 400,
+                () -> feedService.retrieveFollowingAsync(Integer.parseInt(context.pathParam("account_id"))),
+                ids -> respond(context, ids));  // Return the account ids with 200 status.
+    }
+
+    // Handler method for the "/accounts/{account_id}/followers" endpoint. Retrieves the ids of the account's followers.
+    private void retrieveFollowersHandler(Context context) {
+        respondAsync(context, 400,
+                () -> feedService.retrieveFollowersAsync(Integer.parseInt(context.pathParam("account_id"))),
+                ids -> respond(context, ids));  // Return the account ids with 200 status.
+    }
+
+    // Handler method for the "/accounts/{account_id}/feed" endpoint. Retrieves the newest messages by the accounts the
+    // account follows, newest first. Optional query parameter: "limit", the most messages to return.
+    // Responds 400 if limit is out of range.
+    private void retrieveFeedHandler(Context context) {
+        String limitParam = context.queryParam("limit");
+        int accountId;
+        int limit;
+        try {
+            accountId = Integer.parseInt(context.pathParam("account_id"));
+            limit = limitParam == null ? DEFAULT_FEED_SIZE : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            failed(context, 400, e);
+            return;
+        }
+        if (limit < 1 || limit > MAX_FEED_SIZE) {
+            context.status(400);
+            return;
         }
+        respondAsync(context, 500, () -> feedService.retrieveFeedAsync(accountId, limit),
+                messages -> respond(context, messages));   // Return the feed with 200 status.
     }
 }
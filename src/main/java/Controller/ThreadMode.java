@@ -0,0 +1,46 @@
+package Controller;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import io.javalin.util.LoomThreadPool;
+import io.javalin.util.LoomUtil;
+
+// How Jetty runs request handlers. Chosen with the "server.threads" system property ("platform" or "virtual").
+//
+// PLATFORM uses a bounded pool of platform threads, and handlers hand their JDBC work to the DatabaseExecutor's pool
+// so request threads are not held while it blocks. VIRTUAL starts a virtual thread per request, and the
+// DatabaseExecutor runs the JDBC work on that thread, as blocking it holds up nothing else; database concurrency stays
+// bounded by the connection pool's semaphore. Virtual threads need JDK 21 or newer at runtime; on older JDKs VIRTUAL
+// falls back to PLATFORM.
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final int MAX_PLATFORM_THREADS = Integer.getInteger("server.maxThreads", 250);
+    private static final int MIN_PLATFORM_THREADS = Integer.getInteger("server.minThreads", 8);
+    private static final int IDLE_TIMEOUT_MS = 60_000;
+
+    // The mode set by the "server.threads" system property, PLATFORM by default.
+    public static ThreadMode configured() {
+        return valueOf(System.getProperty("server.threads", "platform").trim().toUpperCase());
+    }
+
+    // True if this JVM can actually run the mode.
+    public boolean isAvailable() {
+        return this == PLATFORM || LoomUtil.INSTANCE.getLoomAvailable();
+    }
+
+    // The Jetty thread pool for this mode.
+    public ThreadPool jettyThreadPool() {
+        if (this == VIRTUAL) {
+            if (isAvailable()) {
+                return new LoomThreadPool("JettyServerThreadPool");
+            }
+            System.err.println("Virtual threads need JDK 21 or newer; running handlers on platform threads instead.");
+        }
+        QueuedThreadPool threadPool = new QueuedThreadPool(MAX_PLATFORM_THREADS, MIN_PLATFORM_THREADS, IDLE_TIMEOUT_MS);
+        threadPool.setName("JettyServerThreadPool");
+        return threadPool;
+    }
+}
@@ -0,0 +1,101 @@
+package Controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+// An encoding the API reads request bodies in and writes responses in. JSON is the default; Smile and CBOR are binary
+// encodings of the same data, cheaper to parse and smaller on the wire, for clients that ask for them through the
+// Content-Type and Accept headers. Each format has one ObjectMapper, and one ObjectReader and ObjectWriter per type,
+// shared by every request: they are thread-safe, and a reader or writer bound to its type skips the lookup of the
+// type's deserializer or serializer that a call on the mapper makes each time.
+public enum WireFormat {
+    JSON("application/json", new ObjectMapper()),
+    SMILE("application/x-jackson-smile", new ObjectMapper(new SmileFactory())),
+    CBOR("application/cbor", new ObjectMapper(new CBORFactory()));
+
+    public final String mediaType;
+    public final ObjectMapper mapper;
+    private final Map<Object, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    WireFormat(String mediaType, ObjectMapper mapper) {
+        this.mediaType = mediaType;
+        this.mapper = mapper;
+    }
+
+    // The shared reader for a type, created on first use.
+    public ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, key -> mapper.readerFor(type));
+    }
+
+    public ObjectReader reader(TypeReference<?> type) {
+        return readers.computeIfAbsent(type.getType(), key -> mapper.readerFor(type));
+    }
+
+    // The shared writer for a type, created on first use.
+    public ObjectWriter writer(Class<?> type) {
+        return writers.computeIfAbsent(type, key -> mapper.writerFor(type));
+    }
+
+    // The format of a request body from its Content-Type, which may be null. Anything other than a binary format is
+    // read as JSON, as it always has been.
+    public static WireFormat ofContentType(String contentType) {
+        if (contentType != null) {
+            String mediaType = contentType.split(";", 2)[0].trim();
+            for (WireFormat format : values()) {
+                if (format.mediaType.equalsIgnoreCase(mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    // The preferred format the client accepts, from an Accept header that may be null. Follows the q-values the client
+    // gives; among equal ones JSON wins. A client that accepts none of them, or sends no Accept, gets JSON.
+    public static WireFormat negotiate(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        WireFormat best = JSON;
+        double bestQuality = 0;
+        double jsonQuality = -1;
+        for (String part : accept.split(",")) {
+            String[] fields = part.trim().split(";");
+            String mediaType = fields[0].trim();
+            double quality = 1;
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (mediaType.equals("*/*") || mediaType.equalsIgnoreCase("application/*")) {
+                jsonQuality = Math.max(jsonQuality, quality);   // Wildcards stand for the default format.
+                continue;
+            }
+            for (WireFormat format : values()) {
+                if (format.mediaType.equalsIgnoreCase(mediaType)) {
+                    if (format == JSON) {
+                        jsonQuality = Math.max(jsonQuality, quality);
+                    } else if (quality > bestQuality) {
+                        best = format;
+                        bestQuality = quality;
+                    }
+                }
+            }
+        }
+        return jsonQuality >= bestQuality ? JSON : best;
+    }
+}
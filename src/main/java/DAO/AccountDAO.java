@@ -1,31 +1,61 @@
 package DAO;
 
 import java.sql.*;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 public class AccountDAO {
     //Method for new user account and returning added account object
     public Account addUser(Account account) {
-        String sql = "INSERT INTO account(username, password) VALUES(?, ?)";
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        long start = System.nanoTime();
+        try {
+            String sql = "INSERT INTO account(username, password) VALUES(?, ?)";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            stmt.setString(1, account.getUsername());   //setting username parameter
-            stmt.setString(2, account.getPassword());   //setting password parameter
-            // Execute the update and check if one row was affected
-            if (stmt.executeUpdate() == 1) {
-                try (ResultSet resultSet = stmt.getGeneratedKeys()) {
-                    if (resultSet.next()) {
-                        account.setAccount_id(resultSet.getInt(1));
+                stmt.setString(1, account.getUsername());   //setting username parameter
+                stmt.setString(2, account.getPassword());   //setting password parameter
+                // Execute the update and check if one row was affected
+                if (stmt.executeUpdate() == 1) {
+                    try (ResultSet resultSet = stmt.getGeneratedKeys()) {
+                        if (resultSet.next()) {
+                            account.setAccount_id(resultSet.getInt(1));
+                        }
                     }
+                    return account; //return updated account object
                 }
-                return account; //return updated account object
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return null; //return null is no user added
+        } finally {
+            Metrics.recordDao("AccountDAO.addUser", start);
+        }
+    }
+
+    // Method to replace an account's stored password hash, returning whether the account was found
+    public boolean updatePassword(int accountId, String password) {
+        long start = System.nanoTime();
+        try {
+            String sql = "UPDATE account SET password = ? WHERE account_id = ?";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+                stmt.setString(1, password);
+                stmt.setInt(2, accountId);
+                return stmt.executeUpdate() == 1;
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return false;
+        } finally {
+            Metrics.recordDao("AccountDAO.updatePassword", start);
         }
-        return null; //return null is no user added
     }
 
     // Method to search for an account by username and return the found account object
@@ -33,23 +63,28 @@ public class AccountDAO {
     // Get username from result set
     // Get password from result set
     public Account searchByUser(String username) {
-        String sql = "SELECT * FROM account WHERE username = ?";
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM account WHERE username = ?";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
 
-            stmt.setString(1, username);    // Set the username parameter in the SQL statement
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    return new Account(
-                            resultSet.getInt("account_id"),
-                            resultSet.getString("username"),
-                            resultSet.getString("password"));
+                stmt.setString(1, username);    // Set the username parameter in the SQL statement
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    if (resultSet.next()) {
+                        return new Account(
+                                resultSet.getInt("account_id"),
+                                resultSet.getString("username"),
+                                resultSet.getString("password"));
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return null;    // Return null if no account is found
+        } finally {
+            Metrics.recordDao("AccountDAO.searchByUser", start);
         }
-        return null;    // Return null if no account is found
     }
 
     // Method to search for an account by user ID and return the found account object
@@ -57,22 +92,51 @@ public class AccountDAO {
     // Get username from result set
     // Get password from result set
     public Account searchById(int userId) {
-        String sql = "SELECT * FROM account WHERE account_id = ?";
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(sql)) {
+        long start = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM account WHERE account_id = ?";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
 
-            stmt.setInt(1, userId);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    return new Account(
-                            resultSet.getInt("account_id"),
-                            resultSet.getString("username"),
-                            resultSet.getString("password"));
+                stmt.setInt(1, userId);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    if (resultSet.next()) {
+                        return new Account(
+                                resultSet.getInt("account_id"),
+                                resultSet.getString("username"),
+                                resultSet.getString("password"));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();    // Print stack trace if exception occurs
+            }
+            return null;    // Return null if no account is found
+        } finally {
+            Metrics.recordDao("AccountDAO.searchById", start);
+        }
+    }
+
+    // Method to find which of the given account ids exist, using a single query
+    public Set<Integer> searchExistingIds(Collection<Integer> userIds) {
+        long start = System.nanoTime();
+        try {
+            Set<Integer> existingIds = new HashSet<>();
+            String sql = "SELECT account_id FROM account WHERE account_id = ANY(?)";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+                stmt.setArray(1, connection.createArrayOf("INTEGER", userIds.toArray()));
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        existingIds.add(resultSet.getInt(1));
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();    // Print stack trace if exception occurs
+            return existingIds;
+        } finally {
+            Metrics.recordDao("AccountDAO.searchExistingIds", start);
         }
-        return null;    // Return null if no account is found
     }
 }
@@ -0,0 +1,135 @@
+package DAO;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import Util.ConnectionUtil;
+import Util.Metrics;
+
+public class FollowDAO {
+    // Method to record that one account follows another
+    // Following an account already followed changes nothing; returns false only if an error occurred
+    public boolean follow(int followerId, int followeeId) {
+        long start = System.nanoTime();
+        try {
+            String sql = "MERGE INTO follow(follower_id, followee_id) KEY(follower_id, followee_id) VALUES(?, ?)";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+                stmt.setInt(1, followerId);
+                stmt.setInt(2, followeeId);
+                stmt.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return false;
+        } finally {
+            Metrics.recordDao("FollowDAO.follow", start);
+        }
+    }
+
+    // Method to remove a follow relationship
+    // Unfollowing an account not followed changes nothing; returns false only if an error occurred
+    public boolean unfollow(int followerId, int followeeId) {
+        long start = System.nanoTime();
+        try {
+            String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+                stmt.setInt(1, followerId);
+                stmt.setInt(2, followeeId);
+                stmt.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return false;
+        } finally {
+            Metrics.recordDao("FollowDAO.unfollow", start);
+        }
+    }
+
+    // Method to retrieve the ids of the accounts an account follows, in account_id order
+    // Returns null if an error occurred, so callers can tell a failed read from an account that follows no one
+    public List<Integer> retrieveFollowing(int followerId) {
+        long start = System.nanoTime();
+        try {
+            return retrieveIds("SELECT followee_id FROM follow WHERE follower_id = ? ORDER BY followee_id LIMIT ?",
+                    followerId, Integer.MAX_VALUE);
+        } finally {
+            Metrics.recordDao("FollowDAO.retrieveFollowing", start);
+        }
+    }
+
+    // Method to retrieve the ids of up to limit of an account's followers, in account_id order
+    // Returns null if an error occurred
+    public List<Integer> retrieveFollowers(int followeeId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return retrieveIds("SELECT follower_id FROM follow WHERE followee_id = ? ORDER BY follower_id LIMIT ?",
+                    followeeId, limit);
+        } finally {
+            Metrics.recordDao("FollowDAO.retrieveFollowers", start);
+        }
+    }
+
+    // Method to count an account's followers, stopping at max so the cost stays bounded for very popular accounts
+    // Returns the smaller of the count and max, or -1 if an error occurred
+    public int countFollowers(int followeeId, int max) {
+        long start = System.nanoTime();
+        try {
+            String sql = "SELECT COUNT(*) FROM (SELECT 1 FROM follow WHERE followee_id = ? LIMIT ?)";
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+                stmt.setInt(1, followeeId);
+                stmt.setInt(2, max);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    if (resultSet.next()) {
+                        return resultSet.getInt(1);
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return -1;
+        } finally {
+            Metrics.recordDao("FollowDAO.countFollowers", start);
+        }
+    }
+
+    // Method to find every account with more than the given number of followers
+    // Returns null if an error occurred
+    public List<Integer> retrieveAccountsWithMoreFollowersThan(int count) {
+        long start = System.nanoTime();
+        try {
+            return retrieveIds("SELECT followee_id FROM follow GROUP BY followee_id HAVING COUNT(*) > ? LIMIT ?",
+                    count, Integer.MAX_VALUE);
+        } finally {
+            Metrics.recordDao("FollowDAO.retrieveAccountsWithMoreFollowersThan", start);
+        }
+    }
+
+    // Run a query taking an id and a limit and collect the ids it returns, or return null if it fails
+    private List<Integer> retrieveIds(String sql, int id, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+            stmt.setInt(1, id);
+            stmt.setInt(2, limit);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return ids;
+    }
+}
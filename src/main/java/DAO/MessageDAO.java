@@ -1,144 +1,523 @@
 package DAO;
 
 import Model.Message;
+import Model.MessageTimeRange;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 // Method to create a new message in the database
 // Prepare SQL statement with RETURN_GENERATED_KEYS to get the generated key
 public class MessageDAO {
+    // Callback for rows streamed out of a query one at a time instead of being collected into a list
+    public interface MessageHandler {
+        void handle(Message message) throws IOException;
+    }
+
     public Message createMessage(Message message) {
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement(
-                     "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)",
-                     Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, message.getPosted_by());
-            stmt.setString(2, message.getMessage_text());   // Set the message_text parameter
-            stmt.setLong(3, message.getTime_posted_epoch());
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)",
+                         Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setInt(1, message.getPosted_by());
+                stmt.setString(2, message.getMessage_text());   // Set the message_text parameter
+                stmt.setLong(3, message.getTime_posted_epoch());
+
+                int affectedRows = stmt.executeUpdate();    // Execute the SQL statement and get the number of rows affected
+                if (affectedRows == 0) {
+                    throw new SQLException("create failed");    // Throw an exception if no rows were affected
+                }
 
-            int affectedRows = stmt.executeUpdate();    // Execute the SQL statement and get the number of rows affected
-            if (affectedRows == 0) {
-                throw new SQLException("create failed");    // Throw an exception if no rows were affected
+                try (ResultSet resultSet = stmt.getGeneratedKeys()) {
+                    if (resultSet.next()) {
+                        message.setMessage_id(resultSet.getInt(1));
+                    } else {
+                        throw new SQLException("no generated key obtained.");
+                    }
+                }
+                return message; // Return the updated message object with the generated key
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;    // Return null if an error occurred
             }
+        } finally {
+            Metrics.recordDao("MessageDAO.createMessage", start);
+        }
+    }
 
-            try (ResultSet resultSet = stmt.getGeneratedKeys()) {
-                if (resultSet.next()) {
-                    message.setMessage_id(resultSet.getInt(1));
-                } else {
-                    throw new SQLException("no generated key obtained.");
+    // Method to create several messages in one transaction with a single JDBC batch
+    // Generated keys are copied back onto the messages in order; returns null and rolls back if any insert fails
+    public List<Message> createMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    for (Message message : messages) {
+                        stmt.setInt(1, message.getPosted_by());
+                        stmt.setString(2, message.getMessage_text());
+                        stmt.setLong(3, message.getTime_posted_epoch());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+
+                    try (ResultSet resultSet = stmt.getGeneratedKeys()) {
+                        for (Message message : messages) {
+                            if (!resultSet.next()) {
+                                throw new SQLException("no generated key obtained.");
+                            }
+                            message.setMessage_id(resultSet.getInt(1));
+                        }
+                    }
+                    connection.commit();
+                    return messages;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;    // Return null if an error occurred
+            }
+        } finally {
+            Metrics.recordDao("MessageDAO.createMessages", start);
+        }
+    }
+
+    // Method to reserve a block of count message_ids for messages inserted later with writeMessages
+    // Moves the identity past the block, so rows inserted through createMessage(s) never take a reserved id.
+    // The ALTER waits for open inserts, and the block is retried if one of them landed inside it
+    // Returns the first id of the block, or -1 if the reservation failed
+    public synchronized int reserveMessageIds(int count) {
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                while (true) {
+                    int first;
+                    try (ResultSet resultSet = stmt.executeQuery(
+                            "SELECT GREATEST((SELECT IDENTITY_BASE FROM INFORMATION_SCHEMA.COLUMNS"
+                                    + " WHERE TABLE_NAME = 'MESSAGE' AND COLUMN_NAME = 'MESSAGE_ID'),"
+                                    + " (SELECT COALESCE(MAX(message_id), 0) + 1 FROM message))")) {
+                        resultSet.next();
+                        first = resultSet.getInt(1);
+                    }
+                    stmt.execute("ALTER TABLE message ALTER COLUMN message_id RESTART WITH " + (first + count));
+                    try (ResultSet resultSet = stmt.executeQuery("SELECT COUNT(*) FROM message WHERE message_id >= "
+                            + first + " AND message_id < " + (first + count))) {
+                        resultSet.next();
+                        if (resultSet.getInt(1) == 0) {
+                            return first;
+                        }
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return -1;
             }
-            return message; // Return the updated message object with the generated key
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return null;    // Return null if an error occurred
+        } finally {
+            Metrics.recordDao("MessageDAO.reserveMessageIds", start);
+        }
+    }
+
+    // Method to write messages that already carry a reserved message_id, in one transaction with a single JDBC batch
+    // MERGE lets journal replay write a message again whose checkpoint was lost in a crash; that is only safe because
+    // updates and deletes of a queued message wait for its checkpoint to be synced, so nothing has changed it since
+    // Rolls back and throws if any write fails, so the caller can tell a transient failure from a row that can never
+    // be written
+    public void writeMessages(List<Message> messages) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "MERGE INTO message(message_id, posted_by, message_text, time_posted_epoch) KEY(message_id)"
+                            + " VALUES(?, ?, ?, ?)")) {
+                for (Message message : messages) {
+                    stmt.setInt(1, message.getMessage_id());
+                    stmt.setInt(2, message.getPosted_by());
+                    stmt.setString(3, message.getMessage_text());
+                    stmt.setLong(4, message.getTime_posted_epoch());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            Metrics.recordDao("MessageDAO.writeMessages", start);
         }
     }
 
     // Method to retrieve all messages from the database
     // Prepare SQL statement to select all messages
     public List<Message> retrieveAllMessages() {
-        List<Message> messages = new ArrayList<>();     // Create a list to hold the retrieved messages
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("SELECT * FROM message");
-             ResultSet resultSet = stmt.executeQuery()) {
-            while (resultSet.next()) {
-                messages.add(new Message(
-                        resultSet.getInt("message_id"),
-                        resultSet.getInt("posted_by"),
-                        resultSet.getString("message_text"),
-                        resultSet.getLong("time_posted_epoch")
-                ));
+        long start = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();     // Create a list to hold the retrieved messages
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement("SELECT * FROM message");
+                 ResultSet resultSet = stmt.executeQuery()) {
+                while (resultSet.next()) {
+                    messages.add(new Message(
+                            resultSet.getInt("message_id"),
+                            resultSet.getInt("posted_by"),
+                            resultSet.getString("message_text"),
+                            resultSet.getLong("time_posted_epoch")
+                    ));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return messages;    // Return the list of retrieved messages
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveAllMessages", start);
         }
-        return messages;    // Return the list of retrieved messages
     }
 
     // Method to retrieve a message by its ID
     // Prepare SQL statement to select a specific message by ID
     public Message retrieveMessageById(int mId) {
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("SELECT * FROM message WHERE message_id = ?")) {
-            stmt.setInt(1, mId);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                if (resultSet.next()) {
-                    return new Message(
-                            resultSet.getInt("message_id"),
-                            resultSet.getInt("posted_by"),
-                            resultSet.getString("message_text"),
-                            resultSet.getLong("time_posted_epoch")
-                    );
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement("SELECT * FROM message WHERE message_id = ?")) {
+                stmt.setInt(1, mId);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    if (resultSet.next()) {
+                        return new Message(
+                                resultSet.getInt("message_id"),
+                                resultSet.getInt("posted_by"),
+                                resultSet.getString("message_text"),
+                                resultSet.getLong("time_posted_epoch")
+                        );
+                    }
                 }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return null;    // Return null if no message was found with the given ID
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveMessageById", start);
         }
-        return null;    // Return null if no message was found with the given ID
     }
 
     // Method to delete a message by its ID
-    // Prepare SQL statement to delete a specific message by ID
+    // A single statement deletes the row and reads it back through H2's OLD TABLE delta table
     public Message deleteMessageByMessageId(int mId) {
-        Message message = retrieveMessageById(mId);
-        if (message != null) {
+        long start = System.nanoTime();
+        try {
             try (Connection connection = ConnectionUtil.getConnection();
-                 PreparedStatement stmt = connection.prepareStatement("DELETE FROM message WHERE message_id = ?")) {
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)")) {
                 stmt.setInt(1, mId);
-                int affectedRows = stmt.executeUpdate();
-                if (affectedRows > 0) {
-                    return message;
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    if (resultSet.next()) {
+                        return toMessage(resultSet);
+                    }
                 }
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            return null;    // Return null if no message was deleted
+        } finally {
+            Metrics.recordDao("MessageDAO.deleteMessageByMessageId", start);
         }
-        return null;    // Return null if deletion failed
     }
 
     // Method to update a message by its ID
-    // Prepare SQL statement to update a specific message by ID
+    // A single statement updates the row and reads back its new state through H2's FINAL TABLE delta table
     public Message updateMessageByMessageId(int mId, Message message) {
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("UPDATE message SET message_text = ? WHERE message_id = ?")) {
-            stmt.setString(1, message.getMessage_text());
-            stmt.setInt(2, mId);
-            int updatedRows = stmt.executeUpdate();
-            if (updatedRows > 0) {
-                return retrieveMessageById(mId);
-            } else {
-                return null;    // Return null if no rows were affected
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)")) {
+                stmt.setString(1, message.getMessage_text());
+                stmt.setInt(2, mId);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    if (resultSet.next()) {
+                        return toMessage(resultSet);
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return null;    // Return null if an error occurred during the update
+            return null;    // Return null if no rows were affected or an error occurred during the update
+        } finally {
+            Metrics.recordDao("MessageDAO.updateMessageByMessageId", start);
         }
     }
 
     // Method to retrieve all messages posted by a specific user ID
     // Prepare SQL statement to select all messages by a specific user ID
     public List<Message> retrieveAllMessagesForUserId(int userId) {
-        List<Message> messages = new ArrayList<>();
-        try (Connection connection = ConnectionUtil.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("SELECT * FROM message WHERE posted_by = ?")) {
-            stmt.setInt(1, userId);
-            try (ResultSet resultSet = stmt.executeQuery()) {
-                while (resultSet.next()) {
-                    messages.add(new Message(
-                            resultSet.getInt("message_id"),
-                            resultSet.getInt("posted_by"),
-                            resultSet.getString("message_text"),
-                            resultSet.getLong("time_posted_epoch")
-                    ));
+        long start = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id")) {
+                stmt.setInt(1, userId);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        messages.add(new Message(
+                                resultSet.getInt("message_id"),
+                                resultSet.getInt("posted_by"),
+                                resultSet.getString("message_text"),
+                                resultSet.getLong("time_posted_epoch")
+                        ));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return messages;    // Return the list of retrieved messages
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveAllMessagesForUserId", start);
+        }
+    }
+
+    // Method to retrieve the newest messages posted by a specific user ID, newest first
+    // Returns null if an error occurred, so callers can tell a failed read from a user with no messages
+    public List<Message> retrieveNewestMessagesForUserId(int userId, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id DESC LIMIT ?")) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, limit);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        messages.add(toMessage(resultSet));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+            return messages;
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveNewestMessagesForUserId", start);
+        }
+    }
+
+    // Method to retrieve one page of messages ordered by message_id, starting after the given cursor
+    // Keyset pagination seeks straight to the cursor through the primary key instead of skipping rows with OFFSET
+    public List<Message> retrieveMessagesAfter(int afterId, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?")) {
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, limit);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        messages.add(toMessage(resultSet));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return messages;
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveMessagesAfter", start);
+        }
+    }
+
+    // Method to stream messages ordered by message_id, starting after the given cursor, to a handler
+    // Rows are handed over as they are read, so memory use does not grow with the number of rows
+    // Returns false if the query failed part way, so the caller knows it did not see every row
+    public boolean streamMessagesAfter(int afterId, int limit, MessageHandler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?")) {
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, limit);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        handler.handle(toMessage(resultSet));
+                    }
                 }
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return false;
+        } finally {
+            Metrics.recordDao("MessageDAO.streamMessagesAfter", start);
         }
-        return messages;    // Return the list of retrieved messages
     }
-}
\ No newline at end of file
+
+    // Method to stream messages with a message_id in (afterId, upToId], ordered by message_id, to a handler
+    // Returns false if the query failed part way, so the caller knows it did not see every row
+    public boolean streamMessagesBetween(int afterId, int upToId, MessageHandler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT * FROM message WHERE message_id > ? AND message_id <= ? ORDER BY message_id")) {
+                stmt.setInt(1, afterId);
+                stmt.setInt(2, upToId);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        handler.handle(toMessage(resultSet));
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return false;
+        } finally {
+            Metrics.recordDao("MessageDAO.streamMessagesBetween", start);
+        }
+    }
+
+    // Method to find the highest message_id in use
+    // Returns 0 if there are no messages, or -1 if an error occurs
+    public int findMaxMessageId() {
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement("SELECT COALESCE(MAX(message_id), 0) FROM message");
+                 ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getInt(1);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return -1;
+        } finally {
+            Metrics.recordDao("MessageDAO.findMaxMessageId", start);
+        }
+    }
+
+    // Method to retrieve one page of messages in a time range, ordered by time_posted_epoch then message_id
+    // The range is read through an index on those columns, so a page seeks to its cursor instead of scanning the table
+    // Returns null if an error occurred, so callers can tell a failed read from an empty range
+    public List<Message> retrieveMessagesInTimeRange(MessageTimeRange range, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(timeRangeQuery(range))) {
+                bindTimeRange(stmt, range, limit);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        messages.add(toMessage(resultSet));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+            return messages;
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveMessagesInTimeRange", start);
+        }
+    }
+
+    // Method to stream up to limit messages in a time range, ordered by time_posted_epoch then message_id, to a handler
+    // Returns false if the query failed part way, so the caller knows it did not see every row
+    public boolean streamMessagesInTimeRange(MessageTimeRange range, int limit, MessageHandler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(timeRangeQuery(range))) {
+                bindTimeRange(stmt, range, limit);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        handler.handle(toMessage(resultSet));
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return false;
+        } finally {
+            Metrics.recordDao("MessageDAO.streamMessagesInTimeRange", start);
+        }
+    }
+
+    // Method to retrieve the newest messages posted by the accounts an account follows, newest first
+    // Messages by the accounts in excludedAuthors are left out
+    // Returns null if an error occurred
+    public List<Message> retrieveNewestMessagesFollowedBy(int followerId, Collection<Integer> excludedAuthors, int limit) {
+        long start = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(
+                         "SELECT m.* FROM follow f JOIN message m ON m.posted_by = f.followee_id"
+                                 + " WHERE f.follower_id = ? AND NOT (f.followee_id = ANY(?))"
+                                 + " ORDER BY m.message_id DESC LIMIT ?")) {
+                stmt.setInt(1, followerId);
+                stmt.setArray(2, connection.createArrayOf("INTEGER", excludedAuthors.toArray()));
+                stmt.setInt(3, limit);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        messages.add(toMessage(resultSet));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+            return messages;
+        } finally {
+            Metrics.recordDao("MessageDAO.retrieveNewestMessagesFollowedBy", start);
+        }
+    }
+
+    // The query for up to a limit of the messages of a time range after its cursor, in (time_posted_epoch, message_id)
+    // order, with its parameters bound by bindTimeRange
+    // The order leads with posted_by when the range is for one user, so the query planner reads it straight from the
+    // (posted_by, time_posted_epoch, message_id) index instead of sorting
+    private static String timeRangeQuery(MessageTimeRange range) {
+        return "SELECT * FROM message WHERE " + (range.postedBy != null ? "posted_by = ? AND " : "")
+                + "time_posted_epoch >= ? AND time_posted_epoch < ? AND (time_posted_epoch > ? OR message_id > ?) ORDER BY "
+                + (range.postedBy != null ? "posted_by, " : "") + "time_posted_epoch, message_id LIMIT ?";
+    }
+
+    // Bind the parameters of a timeRangeQuery statement, inside the caller's try so a failure still closes it
+    private static void bindTimeRange(PreparedStatement stmt, MessageTimeRange range, int limit) throws SQLException {
+        int i = 1;
+        if (range.postedBy != null) {
+            stmt.setInt(i++, range.postedBy);
+        }
+        stmt.setLong(i++, Math.max(range.since, range.afterTime));
+        stmt.setLong(i++, range.until);
+        stmt.setLong(i++, range.afterTime);
+        stmt.setInt(i++, range.afterId);
+        stmt.setInt(i, limit);
+    }
+
+    // Map the current row of a result set to a Message
+    private Message toMessage(ResultSet resultSet) throws SQLException {
+        return new Message(
+                resultSet.getInt("message_id"),
+                resultSet.getInt("posted_by"),
+                resultSet.getString("message_text"),
+                resultSet.getLong("time_posted_epoch")
+        );
+    }
+}
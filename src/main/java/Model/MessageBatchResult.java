@@ -0,0 +1,95 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one item in a batch of new messages.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the item in the submitted batch, starting from 0.
+     */
+    public int index;
+    /**
+     * The created message, including its generated message_id, or null if the item was rejected.
+     */
+    public Message message;
+    /**
+     * Why the item was rejected, or null if it was created.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult() {
+    }
+    /**
+     * @param index
+     * @param message
+     * @param error
+     */
+    public MessageBatchResult(int index, Message message, String error) {
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @return a result for an item that was created
+     */
+    public static MessageBatchResult created(int index, Message message) {
+        return new MessageBatchResult(index, message, null);
+    }
+    /**
+     * @return a result for an item that was rejected
+     */
+    public static MessageBatchResult rejected(int index, String error) {
+        return new MessageBatchResult(index, null, error);
+    }
+    /**
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package Model;
+
+/**
+ * This is a class that models a window of time_posted_epoch values to read messages from, optionally narrowed to one
+ * account, together with the position in it where the next page starts.
+ *
+ * Messages in a range are ordered by time_posted_epoch and then message_id, so the position is the time and id of the
+ * last message already read. Several messages can share a time; the id tells them apart, so no page repeats or skips
+ * one.
+ */
+public class MessageTimeRange {
+    /**
+     * The account whose messages to read, or null for every account.
+     */
+    public final Integer postedBy;
+    /**
+     * The earliest time_posted_epoch included.
+     */
+    public final long since;
+    /**
+     * The time_posted_epoch at which the range ends, itself excluded.
+     */
+    public final long until;
+    /**
+     * The time_posted_epoch of the last message already read, or Long.MIN_VALUE to start at since.
+     */
+    public final long afterTime;
+    /**
+     * The message_id of the last message already read, or 0 to start at since.
+     */
+    public final int afterId;
+    /**
+     * @param postedBy
+     * @param since
+     * @param until
+     */
+    public MessageTimeRange(Integer postedBy, long since, long until) {
+        this(postedBy, since, until, Long.MIN_VALUE, 0);
+    }
+    /**
+     * @param postedBy
+     * @param since
+     * @param until
+     * @param afterTime
+     * @param afterId
+     */
+    public MessageTimeRange(Integer postedBy, long since, long until, long afterTime, int afterId) {
+        this.postedBy = postedBy;
+        this.since = since;
+        this.until = until;
+        this.afterTime = afterTime;
+        this.afterId = afterId;
+    }
+    /**
+     * @return the same range, continuing after the given message
+     */
+    public MessageTimeRange after(Message message) {
+        return new MessageTimeRange(postedBy, since, until, message.getTime_posted_epoch(), message.getMessage_id());
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageTimeRange{" +
+                "postedBy=" + postedBy +
+                ", since=" + since +
+                ", until=" + until +
+                ", afterTime=" + afterTime +
+                ", afterId=" + afterId +
+                '}';
+    }
+}
@@ -3,39 +3,91 @@ package Service;
 import Model.Account;
 import DAO.AccountDAO;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Util.DatabaseExecutor;
+import Util.HashingExecutor;
 
 public class AccountService {
     private final AccountDAO accountDAO;
     // Instance of AccountDAO for database interactions
+    private final PasswordHasher passwordHasher;
+    // Hashes passwords for storage and checks them at login
+
+    // Ids of accounts known to exist. Accounts are never deleted, so once an id is in here it stays valid.
+    private final Set<Integer> knownAccountIds = ConcurrentHashMap.newKeySet();
 
     // Constructor
     public AccountService() {
-        this.accountDAO = new AccountDAO();
+        this(new AccountDAO());
     }
 
     // Constructor 2
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, new PasswordHasher());
+    }
+
+    // Constructor 3
+    public AccountService(AccountDAO accountDAO, PasswordHasher passwordHasher) {
         this.accountDAO = accountDAO;
+        this.passwordHasher = passwordHasher;
     }
 
     // Method to authenticate a user by username and password
+    // The stored hash is upgraded if it is plaintext or weaker than the current cost.
     public Account login(Account account) {
+        validateCredentials(account);
+        Account existingAccount = accountDAO.searchByUser(account.getUsername());
+        String upgradedHash = checkPassword(account, existingAccount);
+        if (upgradedHash != null) {
+            accountDAO.updatePassword(existingAccount.getAccount_id(), upgradedHash);
+        }
+        return loggedIn(account, existingAccount);
+    }
+
+    // Method to register a new user
+    public Account register(Account account) {
+        verifyLogin(account);
+        return addUser(account, passwordHasher.hash(account.getPassword()));
+    }
+
+    private void validateCredentials(Account account) {
         if (account == null || account.getUsername() == null || account.getPassword() == null) {
             throw new IllegalArgumentException("Error: Please check username and password");
         }
+    }
 
-        Account existingAccount = accountDAO.searchByUser(account.getUsername());
-        if (existingAccount != null && existingAccount.getPassword().equals(account.getPassword())) {
-            return existingAccount;
-        } else {
+    // Private method to check a submitted password against the stored account, which is null if the username is
+    // unknown. Returns a new hash to store if the stored one should be upgraded, or null if it is current.
+    private String checkPassword(Account account, Account existingAccount) {
+        boolean matches = existingAccount != null
+                ? passwordHasher.verify(account.getPassword(), existingAccount.getPassword())
+                : passwordHasher.verifyNothing(account.getPassword());
+        if (!matches) {
             throw new IllegalArgumentException("Error: Please check username and password");
         }
+        return passwordHasher.needsRehash(existingAccount.getPassword()) ? passwordHasher.hash(account.getPassword()) : null;
     }
 
-    // Method to register a new user
-    public Account register(Account account) {
-        verifyLogin(account);
-        return accountDAO.addUser(account);
+    // The account as returned to the client, with the password it was submitted with rather than the stored hash
+    private Account loggedIn(Account account, Account existingAccount) {
+        knownAccountIds.add(existingAccount.getAccount_id());
+        return new Account(existingAccount.getAccount_id(), existingAccount.getUsername(), account.getPassword());
+    }
+
+    // Private method to store a new account with its password hash
+    private Account addUser(Account account, String passwordHash) {
+        Account storedAccount = accountDAO.addUser(new Account(account.getUsername(), passwordHash));
+        if (storedAccount == null) {
+            throw new IllegalArgumentException("Error: Account could not be created");
+        }
+        account.setAccount_id(storedAccount.getAccount_id());
+        knownAccountIds.add(account.getAccount_id());    // Warm the cache so the first post skips the lookup.
+        return account;
     }
 
     // Private method to validate the login credentials for registration
@@ -53,6 +105,72 @@ public class AccountService {
 
     // Method to search for an account by user ID
     public Account searchById(int userId) {
-        return accountDAO.searchById(userId);
+        Account account = accountDAO.searchById(userId);
+        if (account != null) {
+            knownAccountIds.add(account.getAccount_id());
+        }
+        return account;
+    }
+
+    // Method to check that an account exists, answered from memory once the id has been seen
+    public boolean accountExists(int userId) {
+        return knownAccountIds.contains(userId) || searchById(userId) != null;
+    }
+
+    // Method to find which of the given account ids exist, with one query for the ids not already known
+    public Set<Integer> findExistingAccountIds(Collection<Integer> userIds) {
+        Set<Integer> existingIds = new HashSet<>();
+        Set<Integer> unknownIds = new HashSet<>();
+        for (Integer userId : userIds) {
+            if (knownAccountIds.contains(userId)) {
+                existingIds.add(userId);
+            } else {
+                unknownIds.add(userId);
+            }
+        }
+        if (!unknownIds.isEmpty()) {
+            Set<Integer> foundIds = accountDAO.searchExistingIds(unknownIds);
+            knownAccountIds.addAll(foundIds);
+            existingIds.addAll(foundIds);
+        }
+        return existingIds;
+    }
+
+    // Asynchronous variants of the methods above. Database work runs on the DatabaseExecutor, so the calling thread
+    // is free while it waits; the returned futures fail with the same exceptions the synchronous methods throw.
+    // Password hashing runs on the HashingExecutor between the database steps, and fails the future with
+    // RejectedExecutionException when too many hashes are already waiting.
+
+    public CompletableFuture<Account> loginAsync(Account account) {
+        return DatabaseExecutor.supply(() -> {
+            validateCredentials(account);
+            return accountDAO.searchByUser(account.getUsername());
+        }).thenCompose(existingAccount -> HashingExecutor.supply(() -> {
+            String upgradedHash = checkPassword(account, existingAccount);
+            if (upgradedHash != null) {     // Not waited for; if it fails, the next login tries again.
+                DatabaseExecutor.supply(() -> accountDAO.updatePassword(existingAccount.getAccount_id(), upgradedHash));
+            }
+            return loggedIn(account, existingAccount);
+        }));
+    }
+
+    public CompletableFuture<Account> registerAsync(Account account) {
+        return DatabaseExecutor.supply(() -> {
+            verifyLogin(account);
+            return account;
+        }).thenCompose(validAccount -> HashingExecutor.supply(() -> passwordHasher.hash(validAccount.getPassword())))
+                .thenCompose(passwordHash -> DatabaseExecutor.supply(() -> addUser(account, passwordHash)));
+    }
+
+    public CompletableFuture<Account> searchByIdAsync(int userId) {
+        return DatabaseExecutor.supply(() -> searchById(userId));
+    }
+
+    // Completes immediately, without touching the executor, when the id is already known.
+    public CompletableFuture<Boolean> accountExistsAsync(int userId) {
+        if (knownAccountIds.contains(userId)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return DatabaseExecutor.supply(() -> accountExists(userId));
     }
 }
@@ -0,0 +1,93 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Issues and verifies the bearer tokens handed out at login. A token is "v1.<account_id>.<expires>.<signature>", with
+// expires in epoch seconds and the signature an HMAC-SHA256 of the rest, so verifying one is a hash over a few dozen
+// bytes: no database query and no server-side session. Nothing is stored, so there is nothing to sweep; a token stops
+// verifying on its own once it expires.
+//
+// The key comes from auth.token.secret, in Base64, so every server behind a load balancer accepts the same tokens and
+// tokens survive a restart. Without it a random key is made per process, with a warning, so tokens stop verifying at
+// every restart and are only accepted by the server that issued them.
+public class AuthTokens {
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    // Mac instances are not thread-safe; one per thread avoids both locking and a lookup per token.
+    private final ThreadLocal<Mac> macs;
+
+    public AuthTokens() {
+        this(secret(), Long.getLong("auth.token.ttlSeconds", 3600L));
+    }
+
+    public AuthTokens(byte[] secret, long ttlSeconds) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);     // Every JVM is required to provide HmacSHA256.
+            }
+        });
+    }
+
+    // A token for the account, valid for ttlSeconds from now.
+    public String issue(int accountId) {
+        String payload = VERSION + "." + accountId + "." + (System.currentTimeMillis() / 1000 + ttlSeconds);
+        return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+    }
+
+    // The account a token was issued to, or -1 if it is malformed, forged or expired.
+    public int verify(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        int expiresStart = token.lastIndexOf('.', signatureStart - 1);
+        int accountStart = token.indexOf('.');
+        if (signatureStart < 0 || expiresStart <= accountStart || !token.startsWith(VERSION + ".")) {
+            return -1;
+        }
+        try {
+            int accountId = Integer.parseInt(token, accountStart + 1, expiresStart, 10);
+            long expires = Long.parseLong(token, expiresStart + 1, signatureStart, 10);
+            if (expires <= System.currentTimeMillis() / 1000) {
+                return -1;
+            }
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+            return MessageDigest.isEqual(sign(token.substring(0, signatureStart)), signature) ? accountId : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;  // A number or the signature did not parse.
+        }
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] secret() {
+        String configured = System.getProperty("auth.token.secret");
+        if (configured != null) {
+            return Base64.getDecoder().decode(configured);
+        }
+        System.err.println("WARNING: auth.token.secret is not set; signing tokens with a random per-process key. Tokens will "
+                + "be refused after a restart and by other servers. Set auth.token.secret to a Base64 key of 32 bytes or more.");
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+}
@@ -0,0 +1,455 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.DatabaseExecutor;
+
+// Keeps the follow graph and builds each account's home feed: the newest messages by the accounts it follows, newest
+// first.
+//
+// Most authors are fanned out on write. When one posts, the new message id is pushed into the inbox of each follower
+// that has one in memory: a bounded ring of the newest ids from the accounts it follows. Reading a feed is then a copy
+// of the ring and a cache lookup per message. A push per follower is too much for accounts with very large
+// followings, which would make every post slow and fill inboxes that are never read, so authors with more than
+// fanOutLimit followers are fanned in on read instead. Their newest messages are taken from their cached timelines
+// when a feed is read and merged with the inbox, newest first.
+//
+// Inboxes are built from the database on first read and kept for the maxInboxes accounts read most recently. Following
+// or unfollowing drops the follower's inbox, so it is rebuilt with the new set of authors. Deleted messages are skipped
+// when a feed is read rather than removed from every inbox that holds them.
+public class FeedService {
+    // Settings, read from system properties.
+    public static class Config {
+        public int inboxSize = Integer.getInteger("feed.inboxSize", 200);
+        public int maxInboxes = Integer.getInteger("feed.maxInboxes", 10_000);
+        public int fanOutLimit = Integer.getInteger("feed.fanOutLimit", 1000);
+        public int cachedAuthors = Integer.getInteger("feed.cachedAuthors", 10_000);
+    }
+
+    // Point-in-time view of the feed counters.
+    public static class Stats {
+        public final int inboxes;
+        public final int pulledAuthors;
+        public final long hits;
+        public final long builds;
+        public final long pushes;
+        public final long pulls;
+
+        Stats(int inboxes, int pulledAuthors, long hits, long builds, long pushes, long pulls) {
+            this.inboxes = inboxes;
+            this.pulledAuthors = pulledAuthors;
+            this.hits = hits;
+            this.builds = builds;
+            this.pushes = pushes;
+            this.pulls = pulls;
+        }
+    }
+
+    // An account's newest message ids from the authors fanned out to it, in a ring, oldest at head, along with every
+    // account it follows. Guarded by the inboxes lock, except loaded.
+    private static class Inbox {
+        final int[] ids;
+        int head;
+        int size;
+        int[] following;
+        // Completes once the inbox is filled, so reads that find it while another read builds it can wait.
+        final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+        Inbox(int capacity) {
+            ids = new int[capacity];
+        }
+
+        int get(int i) {
+            return ids[(head + i) % ids.length];
+        }
+
+        // Insert in id order unless already present, dropping the oldest id if the ring is full.
+        void add(int id) {
+            if (size > 0 && id <= get(size - 1)) {
+                int i = size - 1;
+                while (i >= 0 && get(i) > id) {
+                    i--;
+                }
+                if (i >= 0 && get(i) == id) {
+                    return;
+                }
+                if (i < 0 && size == ids.length) {
+                    return;     // Older than everything kept.
+                }
+            }
+            if (size == ids.length) {
+                head = (head + 1) % ids.length;
+                size--;
+            }
+            int i = size;
+            while (i > 0 && get(i - 1) > id) {
+                ids[(head + i) % ids.length] = get(i - 1);
+                i--;
+            }
+            ids[(head + i) % ids.length] = id;
+            size++;
+        }
+
+        int[] newestFirst() {
+            int[] newest = new int[size];
+            for (int i = 0; i < size; i++) {
+                newest[i] = get(size - 1 - i);
+            }
+            return newest;
+        }
+    }
+
+    // One newest-first source for the merge: an inbox's ids or an author's timeline.
+    private static class Cursor {
+        final int[] ids;
+        final List<Message> messages;
+        int position;
+
+        Cursor(int[] ids, List<Message> messages) {
+            this.ids = ids;
+            this.messages = messages;
+        }
+
+        boolean exhausted() {
+            return position >= (ids != null ? ids.length : messages.size());
+        }
+
+        int headId() {
+            return ids != null ? ids[position] : messages.get(position).getMessage_id();
+        }
+    }
+
+    private final AccountService accountService;
+    private final MessageService messageService;
+    private final FollowDAO followDAO;
+    private final MessageDAO messageDAO;
+    private final int inboxSize;
+    private final int fanOutLimit;
+
+    private final LinkedHashMap<Integer, Inbox> inboxes;
+    // Followers of recently posting authors that are fanned out on write, for pushing without a query.
+    private final LinkedHashMap<Integer, int[]> followers;
+    // Authors with more than fanOutLimit followers, fanned in on read. Only accounts that many follow, so few.
+    private final Set<Integer> pulledAuthors = ConcurrentHashMap.newKeySet();
+    // Serialize recounting an author's followers, so concurrent follows cannot leave the set above out of date.
+    private final Object[] recountLocks = new Object[64];
+    // Bumped on every follow change so a follower list loaded while it changed is not cached.
+    private final AtomicLong followGeneration = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder pushes = new LongAdder();
+    private final LongAdder pulls = new LongAdder();
+
+    public FeedService(AccountService accountService, MessageService messageService) {
+        this(accountService, messageService, new FollowDAO(), new MessageDAO(), new Config());
+    }
+
+    public FeedService(AccountService accountService, MessageService messageService, FollowDAO followDAO,
+                       MessageDAO messageDAO, Config config) {
+        this.accountService = accountService;
+        this.messageService = messageService;
+        this.followDAO = followDAO;
+        this.messageDAO = messageDAO;
+        this.inboxSize = config.inboxSize;
+        this.fanOutLimit = config.fanOutLimit;
+        this.inboxes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Inbox> eldest) {
+                return size() > config.maxInboxes;
+            }
+        };
+        this.followers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > config.cachedAuthors;
+            }
+        };
+        for (int i = 0; i < recountLocks.length; i++) {
+            recountLocks[i] = new Object();
+        }
+        List<Integer> popular = followDAO.retrieveAccountsWithMoreFollowersThan(fanOutLimit);
+        if (popular != null) {
+            pulledAuthors.addAll(popular);  // Otherwise they are found as they post, and fanned out until then.
+        }
+        messageService.addPostListener(this::posted);
+    }
+
+    /* Follow an account if:
+     - the two accounts differ,
+     - both accounts exist.
+     Following an account already followed changes nothing.
+    */
+    public void follow(int followerId, int followeeId) {
+        if (followerId == followeeId) {
+            throw new IllegalArgumentException("Error: An account cannot follow itself");
+        }
+        if (!accountService.accountExists(followerId) || !accountService.accountExists(followeeId)) {
+            throw new IllegalArgumentException("No User found");
+        }
+        if (!followDAO.follow(followerId, followeeId)) {
+            throw new IllegalStateException("Error: Follow could not be saved");
+        }
+        followsChanged(followerId, followeeId);
+    }
+
+    // Stop following an account. Unfollowing an account not followed changes nothing.
+    public void unfollow(int followerId, int followeeId) {
+        if (!followDAO.unfollow(followerId, followeeId)) {
+            throw new IllegalStateException("Error: Unfollow could not be saved");
+        }
+        followsChanged(followerId, followeeId);
+    }
+
+    // Ids of the accounts the account follows.
+    public List<Integer> retrieveFollowing(int accountId) {
+        return checkRead(followDAO.retrieveFollowing(accountId));
+    }
+
+    // Ids of the account's followers.
+    public List<Integer> retrieveFollowers(int accountId) {
+        return checkRead(followDAO.retrieveFollowers(accountId, Integer.MAX_VALUE));
+    }
+
+    // Up to limit of the newest messages by the accounts the account follows, newest first. limit should be at most
+    // inboxSize; the feed reaches no further back than an inbox holds.
+    public List<Message> retrieveFeed(int accountId, int limit) {
+        Inbox inbox = inbox(accountId);
+        List<Cursor> sources = new ArrayList<>();
+        int[] following;
+        synchronized (inboxes) {
+            sources.add(new Cursor(inbox.newestFirst(), null));
+            following = inbox.following;
+        }
+        for (int author : following) {
+            if (pulledAuthors.contains(author)) {
+                sources.add(new Cursor(null, messageService.retrieveNewestMessagesForUserId(author, limit)));
+                pulls.increment();
+            }
+        }
+        return merge(sources, limit);
+    }
+
+    // Asynchronous variants of the methods above, run on the DatabaseExecutor.
+
+    public CompletableFuture<Void> followAsync(int followerId, int followeeId) {
+        return DatabaseExecutor.supply(() -> {
+            follow(followerId, followeeId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> unfollowAsync(int followerId, int followeeId) {
+        return DatabaseExecutor.supply(() -> {
+            unfollow(followerId, followeeId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Integer>> retrieveFollowingAsync(int accountId) {
+        return DatabaseExecutor.supply(() -> retrieveFollowing(accountId));
+    }
+
+    public CompletableFuture<List<Integer>> retrieveFollowersAsync(int accountId) {
+        return DatabaseExecutor.supply(() -> retrieveFollowers(accountId));
+    }
+
+    public CompletableFuture<List<Message>> retrieveFeedAsync(int accountId, int limit) {
+        return DatabaseExecutor.supply(() -> retrieveFeed(accountId, limit));
+    }
+
+    public Stats getStats() {
+        int inboxCount;
+        synchronized (inboxes) {
+            inboxCount = inboxes.size();
+        }
+        return new Stats(inboxCount, pulledAuthors.size(), hits.sum(), builds.sum(), pushes.sum(), pulls.sum());
+    }
+
+    // Fan a new message out to the inboxes of its author's followers, unless the author is fanned in on read.
+    private void posted(Message message) {
+        int author = message.getPosted_by();
+        if (pulledAuthors.contains(author)) {
+            return;
+        }
+        synchronized (inboxes) {
+            if (inboxes.isEmpty()) {
+                return;     // No inbox to push to, so no need to know the followers.
+            }
+        }
+        int[] followerIds = followersOf(author);
+        if (followerIds == null) {
+            synchronized (inboxes) {
+                inboxes.clear();    // Some inboxes now lack the message, and which is unknown; rebuild them all.
+            }
+            return;
+        }
+        if (followerIds.length > fanOutLimit) {
+            pulledAuthors.add(author);  // Found over the limit before a recount; reads fan it in from now on.
+            return;
+        }
+        long pushed = 0;
+        synchronized (inboxes) {
+            for (int follower : followerIds) {
+                Inbox inbox = inboxes.get(follower);
+                if (inbox != null) {
+                    inbox.add(message.getMessage_id());
+                    pushed++;
+                }
+            }
+        }
+        pushes.add(pushed);
+    }
+
+    // Up to fanOutLimit + 1 of the author's followers, from the cache when possible, or null if the read fails.
+    private int[] followersOf(int author) {
+        synchronized (followers) {
+            int[] cached = followers.get(author);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long generation = followGeneration.get();
+        List<Integer> loaded = followDAO.retrieveFollowers(author, fanOutLimit + 1);
+        if (loaded == null) {
+            return null;
+        }
+        int[] followerIds = loaded.stream().mapToInt(Integer::intValue).toArray();
+        synchronized (followers) {
+            if (followGeneration.get() == generation) {
+                followers.put(author, followerIds);
+            }
+        }
+        return followerIds;
+    }
+
+    // The account's inbox, built from the database if it is not in memory. An account that follows no one gets an
+    // empty inbox that is not kept.
+    private Inbox inbox(int accountId) {
+        Inbox inbox;
+        boolean found;
+        synchronized (inboxes) {
+            inbox = inboxes.get(accountId);
+            found = inbox != null;
+            if (!found) {
+                // Kept from before the queries, so messages posted while they run are pushed to it too.
+                inbox = new Inbox(inboxSize);
+                inboxes.put(accountId, inbox);
+            }
+        }
+        if (found) {
+            hits.increment();
+            return waitFor(inbox);  // Another read may still be building it.
+        }
+
+        builds.increment();
+        try {
+            List<Integer> following = followDAO.retrieveFollowing(accountId);
+            List<Message> recent = following != null && !following.isEmpty()
+                    ? messageDAO.retrieveNewestMessagesFollowedBy(accountId, pulledAuthors, inboxSize) : List.of();
+            if (following == null || recent == null) {
+                throw new IllegalStateException("Error: Feed could not be read");
+            }
+            synchronized (inboxes) {
+                inbox.following = following.stream().mapToInt(Integer::intValue).toArray();
+                for (Message message : recent) {
+                    inbox.add(message.getMessage_id());
+                }
+                if (following.isEmpty()) {
+                    inboxes.remove(accountId, inbox);
+                }
+            }
+            inbox.loaded.complete(null);
+            return inbox;
+        } catch (RuntimeException e) {
+            synchronized (inboxes) {
+                inboxes.remove(accountId, inbox);
+            }
+            inbox.loaded.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Inbox waitFor(Inbox inbox) {
+        try {
+            inbox.loaded.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Error: Feed could not be read", e.getCause());
+        }
+        return inbox;
+    }
+
+    // Merge newest-first sources into one newest-first list of up to limit messages, skipping ids seen twice and
+    // messages deleted since their id was pushed.
+    private List<Message> merge(List<Cursor> sources, int limit) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(sources.size(), (a, b) -> Integer.compare(b.headId(), a.headId()));
+        for (Cursor source : sources) {
+            if (!source.exhausted()) {
+                heads.add(source);
+            }
+        }
+        List<Message> feed = new ArrayList<>(limit);
+        int lastId = 0;     // Message ids start at 1.
+        while (feed.size() < limit && !heads.isEmpty()) {
+            Cursor source = heads.poll();
+            int id = source.headId();
+            Message message = source.messages != null ? source.messages.get(source.position) : null;
+            source.position++;
+            if (!source.exhausted()) {
+                heads.add(source);
+            }
+            if (id == lastId) {
+                continue;
+            }
+            lastId = id;
+            if (message == null) {
+                message = messageService.retrieveMessageById(id);
+            }
+            if (message != null) {
+                feed.add(message);
+            }
+        }
+        return feed;
+    }
+
+    // Bring what is kept in memory up to date after the follower started or stopped following the followee.
+    private void followsChanged(int followerId, int followeeId) {
+        followGeneration.incrementAndGet();
+        synchronized (followers) {
+            followers.remove(followeeId);
+        }
+        synchronized (recountLocks[followeeId & (recountLocks.length - 1)]) {
+            int count = followDAO.countFollowers(followeeId, fanOutLimit + 1);
+            if (count > fanOutLimit) {
+                pulledAuthors.add(followeeId);
+            } else if (count >= 0 && pulledAuthors.remove(followeeId)) {
+                synchronized (inboxes) {
+                    inboxes.clear();    // Inboxes built while the author was fanned in lack its messages.
+                }
+            }
+        }
+        synchronized (inboxes) {
+            inboxes.remove(followerId);
+        }
+    }
+
+    private static List<Integer> checkRead(List<Integer> ids) {
+        if (ids == null) {
+            throw new IllegalStateException("Error: Follows could not be read");
+        }
+        return ids;
+    }
+}
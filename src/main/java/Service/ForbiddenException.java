@@ -0,0 +1,8 @@
+package Service;
+
+// Thrown when a request's token is valid but belongs to an account other than the one the request acts for.
+public class ForbiddenException extends RuntimeException {
+    public ForbiddenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,184 @@
+package Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import Model.Message;
+
+// Bounded, read-through LRU cache of messages keyed by message_id.
+// Lookups for ids that do not exist are remembered for a short time as well, so repeated requests for a missing
+// message do not reach the database every time.
+// Message is mutable, so the cache keeps its own copies: callers get a copy on every read and may change it freely.
+public class MessageCache {
+    // Power of two, so a message's stripe is a mask of its id.
+    private static final int GENERATION_STRIPES = 256;
+
+    // A cached lookup result. message is null for a negative entry, which expires at expiresAtNanos.
+    private static class Entry {
+        final Message message;
+        final long expiresAtNanos;
+
+        Entry(Message message, long expiresAtNanos) {
+            this.message = message;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    // Point-in-time view of the cache counters.
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long negativeHits;
+        public final long evictions;
+        public final long loads;
+        public final long totalLoadNanos;
+        public final int size;
+
+        Stats(long hits, long misses, long negativeHits, long evictions, long loads, long totalLoadNanos, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.negativeHits = negativeHits;
+            this.evictions = evictions;
+            this.loads = loads;
+            this.totalLoadNanos = totalLoadNanos;
+            this.size = size;
+        }
+
+        // Fraction of lookups (including negative hits) answered without loading.
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        public double averageLoadNanos() {
+            return loads == 0 ? 0.0 : (double) totalLoadNanos / loads;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", negativeHits=" + negativeHits +
+                    ", evictions=" + evictions +
+                    ", loads=" + loads +
+                    ", totalLoadNanos=" + totalLoadNanos +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+
+    private final long negativeTtlNanos;
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    // Bumped on every write to a message in the stripe, so a load that raced with an update or delete of the same
+    // message does not cache what it read, while loads of other messages are unaffected. Guarded by entries.
+    private final long[] writeGenerations = new long[GENERATION_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+
+    public MessageCache() {
+        this(Integer.getInteger("cache.messages.maxSize", 10_000),
+                Long.getLong("cache.messages.negativeTtlMs", 5_000L));
+    }
+
+    public MessageCache(int maxSize, long negativeTtlMs) {
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Return the cached message for mId, calling loader on a miss. A null result from loader is cached as missing.
+    public Message get(int mId, IntFunction<Message> loader) {
+        long generation;
+        synchronized (entries) {
+            Entry entry = entries.get(mId);
+            if (entry != null) {
+                if (entry.message != null) {
+                    hits.increment();
+                    return copy(entry.message);
+                }
+                if (System.nanoTime() - entry.expiresAtNanos < 0) {
+                    hits.increment();
+                    negativeHits.increment();
+                    return null;
+                }
+                entries.remove(mId);
+            }
+            generation = writeGenerations[stripe(mId)];
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        Message message = loader.apply(mId);
+        long end = System.nanoTime();
+        loads.increment();
+        totalLoadNanos.add(end - start);
+
+        synchronized (entries) {
+            if (writeGenerations[stripe(mId)] == generation) {
+                entries.put(mId, message == null ? new Entry(null, end + negativeTtlNanos) : new Entry(copy(message), 0L));
+            }
+        }
+        return message;
+    }
+
+    // True if a lookup of mId would currently be answered without loading.
+    public boolean isCached(int mId) {
+        synchronized (entries) {
+            Entry entry = entries.get(mId);
+            return entry != null && (entry.message != null || System.nanoTime() - entry.expiresAtNanos < 0);
+        }
+    }
+
+    // Store a message known to be current, replacing any cached or negative entry for its id.
+    public void put(Message message) {
+        synchronized (entries) {
+            writeGenerations[stripe(message.getMessage_id())]++;
+            entries.put(message.getMessage_id(), new Entry(copy(message), 0L));
+        }
+    }
+
+    // Drop whatever is cached for mId.
+    public void invalidate(int mId) {
+        synchronized (entries) {
+            writeGenerations[stripe(mId)]++;
+            entries.remove(mId);
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), negativeHits.sum(), evictions.sum(), loads.sum(),
+                totalLoadNanos.sum(), size);
+    }
+
+    // A new Message with the same fields, for caches that must not share theirs with callers.
+    static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+
+    private static int stripe(int mId) {
+        return mId & (GENERATION_STRIPES - 1);
+    }
+}
@@ -0,0 +1,216 @@
+package Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import Model.Message;
+
+// Append-only log of messages accepted by the write-behind queue, so an acknowledged message survives a crash before
+// it reaches the database. Each record is length-prefixed and checksummed; a record torn by a crash is dropped on replay.
+//
+// Every message appended gets the next sequence number. Checkpoint records mark the sequence number through which
+// messages are in the database, so replay skips what was already written. The log is kept in segment files named
+// <path>.<sequence number of the first message in the segment>. A segment is closed at the first checkpoint after it
+// reaches segmentBytes, and a segment is deleted once a synced checkpoint covers all of its messages, so the log stays
+// small even when the queue never empties.
+//
+// Not thread-safe: the write-behind writer thread is the only one to use a journal once it is open.
+public class MessageJournal implements Closeable {
+    private static final byte MESSAGE_RECORD = 1;
+    private static final byte CHECKPOINT_RECORD = 2;
+    private static final int HEADER_BYTES = 8;     // Payload length and CRC32 of the payload.
+
+    private final Path path;
+    private final long segmentBytes;
+    private final TreeMap<Long, Path> segments = new TreeMap<>();     // By sequence number of their first message.
+    private final List<Message> unflushed;      // Found after the last checkpoint when the journal was opened.
+    private FileChannel channel;                // The last segment, the one appended to.
+    private long size;                          // Bytes of whole records in the last segment.
+    private long nextSequence;
+
+    // Open a journal that is never split into segments, such as the dead-letter journal.
+    public MessageJournal(Path path) throws IOException {
+        this(path, Long.MAX_VALUE);
+    }
+
+    // Open the journal's segments, read them for replay, and drop any torn record at the end of the last one.
+    public MessageJournal(Path path, long segmentBytes) throws IOException {
+        this.path = path.toAbsolutePath();
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(this.path.getParent());
+        String prefix = this.path.getFileName() + ".";
+        try (Stream<Path> files = Files.list(this.path.getParent())) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.length() > prefix.length()
+                        && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.parseLong(name.substring(prefix.length())), file);
+                }
+            });
+        }
+
+        List<Message> messages = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        long flushedThrough = 0;
+        if (segments.isEmpty()) {
+            nextSequence = 1;
+            openSegment(nextSequence);
+        } else {
+            for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+                channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                nextSequence = segment.getKey();
+                flushedThrough = Math.max(flushedThrough, readSegment(messages, sequences));
+                if (!segment.getKey().equals(segments.lastKey())) {
+                    channel.close();
+                }
+            }
+            channel.truncate(size);
+        }
+
+        unflushed = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (sequences.get(i) > flushedThrough) {
+                unflushed.add(messages.get(i));
+            }
+        }
+    }
+
+    // The messages appended after the last checkpoint, as found when the journal was opened, in append order.
+    public List<Message> readUnflushed() {
+        return new ArrayList<>(unflushed);
+    }
+
+    // The sequence number of the last message appended, or of the one before the first if none has been.
+    public long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    // Append a message and return its sequence number. It is durable once sync has been called.
+    public long append(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + message.getMessage_text().length() * 3);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MESSAGE_RECORD);
+        out.writeInt(message.getMessage_id());
+        out.writeInt(message.getPosted_by());
+        out.writeUTF(message.getMessage_text());
+        out.writeLong(message.getTime_posted_epoch());
+        write(bytes.toByteArray());
+        return nextSequence++;
+    }
+
+    // Force everything appended so far to disk.
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    // Record, durably, that every message up to sequence number flushedThrough is in the database or dead-lettered,
+    // then start a new segment if the last one is full and delete the segments that hold nothing else. Until this
+    // returns, replay would write those messages again.
+    public void checkpoint(long flushedThrough) throws IOException {
+        writeCheckpoint(flushedThrough);
+        sync();
+        if (size >= segmentBytes) {
+            FileChannel full = channel;
+            openSegment(nextSequence);
+            writeCheckpoint(flushedThrough);    // So the new segment does not depend on the ones before it.
+            sync();
+            full.close();
+        }
+
+        while (segments.size() > 1) {
+            Map.Entry<Long, Path> oldest = segments.firstEntry();
+            if (segments.higherKey(oldest.getKey()) - 1 > flushedThrough) {
+                break;
+            }
+            Files.deleteIfExists(oldest.getValue());
+            segments.remove(oldest.getKey());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Read the records of the segment open in channel, from its start, adding its messages and their sequence numbers.
+    // Returns the highest checkpoint found, and leaves size at the end of the last whole record.
+    private long readSegment(List<Message> messages, List<Long> sequences) throws IOException {
+        long flushedThrough = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+        long end = channel.size();
+        while (position + HEADER_BYTES <= end) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > end) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            channel.read(payload, position + HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+            byte type = in.readByte();
+            if (type == MESSAGE_RECORD) {
+                messages.add(new Message(in.readInt(), in.readInt(), in.readUTF(), in.readLong()));
+                sequences.add(nextSequence++);
+            } else if (type == CHECKPOINT_RECORD) {
+                flushedThrough = Math.max(flushedThrough, in.readLong());
+            }
+            position += HEADER_BYTES + length;
+        }
+        size = position;
+        return flushedThrough;
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path segment = path.resolveSibling(path.getFileName() + "." + firstSequence);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segments.put(firstSequence, segment);
+        size = 0;
+    }
+
+    private void writeCheckpoint(long flushedThrough) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(CHECKPOINT_RECORD);
+        out.writeLong(flushedThrough);
+        write(bytes.toByteArray());
+    }
+
+    // Write a record after the last whole one. A record that fails part way is written over by the next one.
+    private void write(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        long position = size;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        size = position;
+    }
+}
@@ -0,0 +1,641 @@
+package Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.DatabaseExecutor;
+
+// In-memory inverted index over message_text: each term maps to the ids of the messages containing it, sorted, in a
+// primitive array alongside how often the term occurs in each. A search intersects the lists of its terms, starting
+// from the shortest and skipping ahead by binary search in the longer ones, and ranks the matches by TF-IDF, keeping
+// only the best k in a heap so a common term does not cost memory in proportion to its matches.
+//
+// The index is built from the message table in parallel, one range of message_ids per task, when it is first needed,
+// and then kept current by the write paths; until then writes are ignored, as the table scan will find them. Writes
+// that arrive while it is being built are replayed once it is done, so none are lost to the race with the table scan.
+//
+// Each term has an int id, and the terms of each message, needed to remove it, are kept as runs of term ids in one
+// shared array rather than as an array of strings per message.
+public class MessageSearchIndex {
+    // Most distinct terms a query may have; further terms are ignored.
+    public static final int MAX_QUERY_TERMS = 8;
+    // Messages per build task, below which the table is read by a single task.
+    private static final int RANGE_SIZE = 10_000;
+    // Weight of a term occurring tf times in a message, 1 + ln(tf), for every count a posting can hold.
+    private static final double[] TF_WEIGHTS = new double[256];
+
+    static {
+        for (int tf = 1; tf < TF_WEIGHTS.length; tf++) {
+            TF_WEIGHTS[tf] = 1 + Math.log(tf);
+        }
+    }
+
+    // Point-in-time view of the index size.
+    public static class Stats {
+        public final int terms;
+        public final int messages;
+        public final long postings;
+
+        Stats(int terms, int messages, long postings) {
+            this.terms = terms;
+            this.messages = messages;
+            this.postings = postings;
+        }
+    }
+
+    // The ids of the messages containing a term, ascending, and how many times it occurs in each.
+    private static class Postings {
+        final String term;
+        int termId;
+        int[] ids = new int[4];
+        byte[] counts = new byte[4];    // Unsigned; a 255-character message holds a term at most 128 times.
+        int size;
+
+        Postings(String term, int termId) {
+            this.term = term;
+            this.termId = termId;
+        }
+
+        // Messages arrive mostly in id order, so this is nearly always an append.
+        void add(int id, int count) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            int i = size;
+            if (i > 0 && ids[i - 1] > id) {
+                i = -Arrays.binarySearch(ids, 0, size, id) - 1;
+                System.arraycopy(ids, i, ids, i + 1, size - i);
+                System.arraycopy(counts, i, counts, i + 1, size - i);
+            }
+            ids[i] = id;
+            counts[i] = (byte) count;
+            size++;
+        }
+
+        void remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+                size--;
+            }
+        }
+
+        void append(Postings other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, size + other.size);
+                counts = Arrays.copyOf(counts, size + other.size);
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            System.arraycopy(other.counts, 0, counts, size, other.size);
+            size += other.size;
+        }
+
+        // Index of the first id, at from or after it, that is not less than id, or size if there is none.
+        int advance(int from, int id) {
+            if (from >= size || ids[from] >= id) {
+                return from;
+            }
+            int low = from;     // Always below id.
+            int step = 1;
+            int high = from + 1;
+            while (high < size && ids[high] < id) {     // Gallop to bracket id, then binary search the bracket.
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            int i = Arrays.binarySearch(ids, low + 1, Math.min(high + 1, size), id);
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+
+    // The distinct term ids of each message: an open-addressing table from message_id to a run of term ids in a shared
+    // array, so a message costs a few ints rather than a map entry and an array of its own. The runs of removed
+    // messages are reclaimed by compacting the array once they make up half of it.
+    private static class MessageTerms {
+        private static final int FREE = Integer.MIN_VALUE;     // Not a message_id.
+
+        private int[] keys = newKeys(16);
+        private int[] offsets = new int[16];
+        private byte[] lengths = new byte[16];      // Unsigned; a 255-character message has at most 128 distinct terms.
+        private int size;
+        private int[] runs = new int[64];
+        private int used;       // Ints of runs written, including the runs of removed messages.
+        private int garbage;    // Ints of runs belonging to removed messages.
+
+        int size() {
+            return size;
+        }
+
+        // Record the first count ids of termIds for a message that is not recorded yet.
+        void put(int mId, int[] termIds, int count) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int offset = reserve(count);
+            System.arraycopy(termIds, 0, runs, offset, count);
+            int mask = keys.length - 1;
+            int slot = home(mId, mask);
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = mId;
+            offsets[slot] = offset;
+            lengths[slot] = (byte) count;
+            size++;
+        }
+
+        boolean contains(int mId) {
+            int mask = keys.length - 1;
+            for (int slot = home(mId, mask); keys[slot] != FREE; slot = (slot + 1) & mask) {
+                if (keys[slot] == mId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Forget a message, returning its term ids, or null if it was not recorded.
+        int[] remove(int mId) {
+            int mask = keys.length - 1;
+            int slot = home(mId, mask);
+            while (keys[slot] != mId) {
+                if (keys[slot] == FREE) {
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int length = lengths[slot] & 0xff;
+            int[] termIds = Arrays.copyOfRange(runs, offsets[slot], offsets[slot] + length);
+            garbage += length;
+            size--;
+
+            // Shift back the entries after it that probed past it, so lookups need no tombstones.
+            int gap = slot;
+            for (int i = (slot + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+                if (((i - home(keys[i], mask)) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    offsets[gap] = offsets[i];
+                    lengths[gap] = lengths[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = FREE;
+            return termIds;
+        }
+
+        // Record every message of other, which none of this one's are, with term ids translated through termIds.
+        void putAll(MessageTerms other, int[] termIds) {
+            int[] translated = new int[16];
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.keys[slot] == FREE) {
+                    continue;
+                }
+                int length = other.lengths[slot] & 0xff;
+                if (translated.length < length) {
+                    translated = new int[length];
+                }
+                for (int i = 0; i < length; i++) {
+                    translated[i] = termIds[other.runs[other.offsets[slot] + i]];
+                }
+                put(other.keys[slot], translated, length);
+            }
+        }
+
+        // Room for a run of count ints at the end of runs, compacting or growing it first if it is full.
+        private int reserve(int count) {
+            if (used + count > runs.length) {
+                if (garbage * 2 >= used) {
+                    compact();
+                }
+                if (used + count > runs.length) {
+                    runs = Arrays.copyOf(runs, Math.max(runs.length * 2, used + count));
+                }
+            }
+            int offset = used;
+            used += count;
+            return offset;
+        }
+
+        private void compact() {
+            int[] packed = new int[runs.length];
+            int packedUsed = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != FREE) {
+                    int length = lengths[slot] & 0xff;
+                    System.arraycopy(runs, offsets[slot], packed, packedUsed, length);
+                    offsets[slot] = packedUsed;
+                    packedUsed += length;
+                }
+            }
+            runs = packed;
+            used = packedUsed;
+            garbage = 0;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldOffsets = offsets;
+            byte[] oldLengths = lengths;
+            keys = newKeys(capacity);
+            offsets = new int[capacity];
+            lengths = new byte[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = home(oldKeys[i], mask);
+                    while (keys[slot] != FREE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    offsets[slot] = oldOffsets[i];
+                    lengths[slot] = oldLengths[i];
+                }
+            }
+        }
+
+        private static int home(int mId, int mask) {
+            int h = mId * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int[] newKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, FREE);
+            return keys;
+        }
+    }
+
+    // The postings and message terms of one build task, merged into the index when all are done. Term ids here are
+    // the task's own, in the order the task met the terms.
+    private static class Partial {
+        final Map<String, Postings> postings = new HashMap<>();
+        final MessageTerms terms = new MessageTerms();
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock: each term's postings, by term and by term id, with the ids of terms no message has any more.
+    private Map<String, Postings> postings = new HashMap<>();
+    private Postings[] postingsByTermId = new Postings[64];
+    private int termIdsUsed;
+    private int[] freeTermIds = new int[16];
+    private int freeTermIdCount;
+    private MessageTerms messageTerms = new MessageTerms();     // Distinct terms of each message, for removal.
+    private List<Object> pendingWrites;     // Messages added and ids removed during a build; guarded by lock.
+    // Null until the index is first needed; written under lock.
+    private volatile CompletableFuture<Boolean> built;
+    private final int parallelism;
+
+    public MessageSearchIndex() {
+        this(Integer.getInteger("search.rebuildParallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public MessageSearchIndex(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // Start building the index from the message table. Writes meanwhile are kept and replayed after it. Returns a
+    // future that completes with whether the table was read in full.
+    public CompletableFuture<Boolean> rebuild(MessageDAO messageDAO) {
+        return rebuild(messageDAO, null);
+    }
+
+    // As rebuild, unless a build has started since the caller saw previous, in which case return that build's future.
+    private CompletableFuture<Boolean> rebuild(MessageDAO messageDAO, CompletableFuture<Boolean> previous) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        lock.writeLock().lock();
+        try {
+            if (pendingWrites != null || previous != null && built != previous) {
+                return built;   // Already building, or built since.
+            }
+            pendingWrites = new ArrayList<>();
+            built = result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        DatabaseExecutor.supply(messageDAO::findMaxMessageId).thenCompose(maxId -> {
+            if (maxId < 0) {
+                return CompletableFuture.completedFuture((List<Partial>) null);
+            }
+            int ranges = Math.max(1, Math.min(parallelism, maxId / RANGE_SIZE));
+            List<CompletableFuture<Partial>> tasks = new ArrayList<>();
+            for (int i = 0; i < ranges; i++) {
+                int after = (int) ((long) maxId * i / ranges);
+                int upTo = i == ranges - 1 ? Integer.MAX_VALUE : (int) ((long) maxId * (i + 1) / ranges);
+                tasks.add(DatabaseExecutor.supply(() -> readRange(messageDAO, after, upTo)));
+            }
+            return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                List<Partial> partials = new ArrayList<>();
+                for (CompletableFuture<Partial> task : tasks) {
+                    partials.add(task.join());
+                }
+                return partials.contains(null) ? null : partials;
+            });
+        }).whenComplete((partials, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+            }
+            install(error == null ? partials : null);
+            result.complete(error == null && partials != null);
+        });
+        return result;
+    }
+
+    // Completes once the index is built. If it has not been, or the last build failed, starts a build with messageDAO
+    // first. Callers on the DatabaseExecutor must chain on this rather than wait for it, as the build runs there.
+    public CompletableFuture<Boolean> ready(MessageDAO messageDAO) {
+        CompletableFuture<Boolean> build = built;
+        if (build == null) {
+            lock.writeLock().lock();
+            try {
+                if (built == null) {
+                    built = CompletableFuture.completedFuture(false);   // So the build below starts, once.
+                }
+                build = built;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (build.isDone() && !build.join()) {
+            build = rebuild(messageDAO, build);
+        }
+        return build;
+    }
+
+    // A message was created, or its text was changed.
+    public void add(Message message) {
+        lock.writeLock().lock();
+        try {
+            if (built == null) {
+                return;     // The first build will read it from the table.
+            }
+            if (pendingWrites != null) {
+                pendingWrites.add(message);
+            }
+            apply(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // A message queued before it was written reached the database. Indexes it if it is not already, as a message
+    // queued before the index was first needed is in neither the index nor, until now, the table.
+    public void addIfAbsent(Message message) {
+        lock.writeLock().lock();
+        try {
+            if (built == null) {
+                return;
+            }
+            if (pendingWrites != null) {
+                pendingWrites.add(message);
+            }
+            if (!messageTerms.contains(message.getMessage_id())) {
+                apply(message);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // A message was deleted.
+    public void remove(int mId) {
+        lock.writeLock().lock();
+        try {
+            if (built == null) {
+                return;
+            }
+            if (pendingWrites != null) {
+                pendingWrites.add(mId);
+            }
+            unindex(mId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The ids of up to limit messages containing every term of the query, best match first. Call once ready().
+    public List<Integer> search(String query, int limit) {
+        List<String> terms = new ArrayList<>(countTerms(query).keySet());
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (terms.size() > MAX_QUERY_TERMS) {
+            terms = terms.subList(0, MAX_QUERY_TERMS);
+        }
+
+        lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[terms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings.get(terms.get(i));
+                if (lists[i] == null) {
+                    return new ArrayList<>();   // A term no message has; nothing can match them all.
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            double[] idf = new double[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                idf[i] = Math.log(1 + (double) messageTerms.size() / lists[i].size);
+            }
+
+            // Min-heap of the best matches so far, worst on top: {score, id}. Ties go to the newer message.
+            PriorityQueue<double[]> best = new PriorityQueue<>(limit + 1,
+                    (a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+            int[] cursors = new int[lists.length];
+            Postings shortest = lists[0];
+            candidates:
+            for (int c = 0; c < shortest.size; c++) {
+                int id = shortest.ids[c];
+                double score = idf[0] * TF_WEIGHTS[shortest.counts[c] & 0xff];
+                for (int i = 1; i < lists.length; i++) {
+                    cursors[i] = lists[i].advance(cursors[i], id);
+                    if (cursors[i] == lists[i].size) {
+                        break candidates;   // A longer list ran out; no later id is in all of them.
+                    }
+                    if (lists[i].ids[cursors[i]] != id) {
+                        continue candidates;
+                    }
+                    score += idf[i] * TF_WEIGHTS[lists[i].counts[cursors[i]] & 0xff];
+                }
+                if (best.size() < limit) {
+                    best.add(new double[] {score, id});
+                } else if (score >= best.peek()[0]) {     // Ids ascend, so an equal score is a newer message and wins.
+                    double[] replaced = best.poll();
+                    replaced[0] = score;
+                    replaced[1] = id;
+                    best.add(replaced);
+                }
+            }
+
+            Integer[] ids = new Integer[best.size()];
+            for (int i = ids.length - 1; i >= 0; i--) {
+                ids[i] = (int) best.poll()[1];
+            }
+            return new ArrayList<>(Arrays.asList(ids));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (Postings list : postings.values()) {
+                total += list.size;
+            }
+            return new Stats(postings.size(), messageTerms.size(), total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lowercase runs of letters and digits in text, with how many times each occurs, in order of first occurrence.
+    static Map<String, Integer> countTerms(String text) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        if (text == null) {
+            return counts;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                counts.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+                start = -1;
+            }
+        }
+        return counts;
+    }
+
+    // Read one range of the table into postings of its own. Returns null if the read failed.
+    private static Partial readRange(MessageDAO messageDAO, int after, int upTo) {
+        Partial partial = new Partial();
+        int[] termIds = new int[16];
+        try {
+            boolean complete = messageDAO.streamMessagesBetween(after, upTo, message -> {
+                Map<String, Integer> counts = countTerms(message.getMessage_text());
+                int[] ids = termIds.length >= counts.size() ? termIds : new int[counts.size()];
+                int i = 0;
+                for (Map.Entry<String, Integer> term : counts.entrySet()) {
+                    Postings list = partial.postings.computeIfAbsent(term.getKey(),
+                            key -> new Postings(key, partial.postings.size()));
+                    list.add(message.getMessage_id(), term.getValue());
+                    ids[i++] = list.termId;
+                }
+                partial.terms.put(message.getMessage_id(), ids, i);
+            });
+            return complete ? partial : null;
+        } catch (IOException e) {
+            return null;    // Not thrown by this handler.
+        }
+    }
+
+    // Swap in the built index, or keep the current one if the build failed, and replay the writes made meanwhile.
+    private void install(List<Partial> partials) {
+        lock.writeLock().lock();
+        try {
+            if (partials != null) {
+                postings = new HashMap<>();
+                postingsByTermId = new Postings[64];
+                termIdsUsed = 0;
+                freeTermIdCount = 0;
+                messageTerms = new MessageTerms();
+                for (Partial partial : partials) {  // In range order, so appending keeps each list sorted.
+                    int[] termIds = new int[partial.postings.size()];   // The index's term id for each of the task's.
+                    for (Postings list : partial.postings.values()) {
+                        int partialTermId = list.termId;
+                        Postings into = postings.get(list.term);
+                        if (into == null) {
+                            termIds[partialTermId] = register(list);
+                        } else {
+                            into.append(list);
+                            termIds[partialTermId] = into.termId;
+                        }
+                    }
+                    messageTerms.putAll(partial.terms, termIds);
+                }
+                for (Object write : pendingWrites) {
+                    if (write instanceof Message) {
+                        apply((Message) write);
+                    } else {
+                        unindex((Integer) write);
+                    }
+                }
+            }
+            pendingWrites = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Index a message, replacing what was indexed for its id before. Caller holds the write lock.
+    private void apply(Message message) {
+        unindex(message.getMessage_id());
+        Map<String, Integer> counts = countTerms(message.getMessage_text());
+        int[] termIds = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> term : counts.entrySet()) {
+            Postings list = postings.get(term.getKey());
+            if (list == null) {
+                list = new Postings(term.getKey(), 0);
+                register(list);
+            }
+            list.add(message.getMessage_id(), term.getValue());
+            termIds[i++] = list.termId;
+        }
+        messageTerms.put(message.getMessage_id(), termIds, i);
+    }
+
+    // Drop a message from the index, and any term no other message has. Caller holds the write lock.
+    private void unindex(int mId) {
+        int[] termIds = messageTerms.remove(mId);
+        if (termIds == null) {
+            return;
+        }
+        for (int termId : termIds) {
+            Postings list = postingsByTermId[termId];
+            list.remove(mId);
+            if (list.size == 0) {
+                postings.remove(list.term);
+                postingsByTermId[termId] = null;
+                if (freeTermIdCount == freeTermIds.length) {
+                    freeTermIds = Arrays.copyOf(freeTermIds, freeTermIdCount * 2);
+                }
+                freeTermIds[freeTermIdCount++] = termId;
+            }
+        }
+    }
+
+    // Add a term's postings to the index under a term id of its own, reusing one of a term since dropped if there is
+    // one, and return the id. Caller holds the write lock.
+    private int register(Postings list) {
+        int termId;
+        if (freeTermIdCount > 0) {
+            termId = freeTermIds[--freeTermIdCount];
+        } else {
+            termId = termIdsUsed++;
+            if (termId == postingsByTermId.length) {
+                postingsByTermId = Arrays.copyOf(postingsByTermId, termId * 2);
+            }
+        }
+        list.termId = termId;
+        postings.put(list.term, list);
+        postingsByTermId[termId] = list;
+        return termId;
+    }
+}
@@ -1,23 +1,80 @@
 package Service;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 
 import DAO.MessageDAO;
-import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageTimeRange;
+import Util.DatabaseExecutor;
+
+public class MessageService implements Closeable {
+    // Largest number of messages accepted in one call to createMessages.
+    public static final int MAX_BATCH_SIZE = 1000;
 
-public class MessageService {
     private MessageDAO messageDAO;
     private AccountService accountService;
+    private final MessageCache messageCache = new MessageCache();   // Read-through cache in front of messageDAO.
+    private final TimelineCache timelineCache = new TimelineCache();   // Newest messages per account.
+    private final TimelineVersions timelineVersions = new TimelineVersions();  // Change counters per account.
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex();    // Terms of message_text, for search.
+    private final MessageWriteBehind writeBehind;   // Queue for new messages, or null to insert them directly.
+    private final MessageWriteBehind.FlushListener flushListener;   // Registered with writeBehind until close.
+    // Called with the message_id of every message that is updated or deleted, for caches kept outside this class.
+    private final List<IntConsumer> invalidationListeners = new CopyOnWriteArrayList<>();
+    // Called with every new message once it is stored, for feeds kept outside this class.
+    private final List<Consumer<Message>> postListeners = new CopyOnWriteArrayList<>();
 
     public MessageService() {
-        messageDAO = new MessageDAO();
-        accountService = new AccountService();
+        this(new AccountService());
+    }
+
+    // Share an AccountService with the caller so accounts it registers are already known here.
+    public MessageService(AccountService accountService) {
+        this(new MessageDAO(), accountService);
     }
 
     public MessageService(MessageDAO messageDAO, AccountService accountService) {
+        this(messageDAO, accountService, MessageWriteBehind.configured());
+    }
+
+    public MessageService(MessageDAO messageDAO, AccountService accountService, MessageWriteBehind writeBehind) {
         this.messageDAO = messageDAO;
         this.accountService = accountService;
+        this.writeBehind = writeBehind;
+        this.flushListener = new MessageWriteBehind.FlushListener() {
+            // Timelines must match the database, so queued messages join them once they are written. The search index
+            // may have been built after they were queued but before they were written, and then lacks them.
+            @Override
+            public void flushed(List<Message> messages) {
+                for (Message message : messages) {
+                    timelineAdded(message);
+                    searchIndex.addIfAbsent(message);
+                }
+            }
+
+            // A message the database refused was never stored, so it must stop being readable by id or searchable.
+            @Override
+            public void deadLettered(List<Message> messages) {
+                for (Message message : messages) {
+                    messageCache.invalidate(message.getMessage_id());
+                    searchIndex.remove(message.getMessage_id());
+                    invalidated(message.getMessage_id());
+                }
+            }
+        };
+        if (writeBehind != null) {
+            writeBehind.addFlushListener(flushListener);
+        }
     }
 
     /* Process creation of a new message if:
@@ -27,32 +84,109 @@ public class MessageService {
     */
     public Message createMessage(Message message) {
         // Validate the message
-        if (message.getMessage_text() == null || message.getMessage_text().isBlank() || message.getMessage_text().length() > 255) {
+        if (!isValidMessageText(message.getMessage_text())) {
             throw new IllegalArgumentException("Error: Message not processed");
         }
 
         // Check if user exists
-        Account user = accountService.searchById(message.getPosted_by());
-        if (user == null) {
+        if (!accountService.accountExists(message.getPosted_by())) {
             throw new IllegalArgumentException("No User found");
         }
 
-        return messageDAO.createMessage(message);
+        return insertMessage(message);
+    }
+
+    /* Process creation of a batch of new messages. Each item follows the same rules as createMessage.
+     Every posted_by is checked with one query, and the valid items are inserted together in one transaction.
+     Returns one result per item, in order, holding either the created message or the reason it was rejected.
+    */
+    public List<MessageBatchResult> createMessages(List<Message> messages) {
+        if (messages == null || messages.isEmpty() || messages.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Error: Batch must hold between 1 and " + MAX_BATCH_SIZE + " messages");
+        }
+
+        Set<Integer> existingUsers = accountService.findExistingAccountIds(messages.stream()
+                .filter(message -> message != null)
+                .map(Message::getPosted_by)
+                .collect(Collectors.toSet()));
+
+        MessageBatchResult[] results = new MessageBatchResult[messages.size()];
+        List<Integer> validIndexes = new ArrayList<>();
+        List<Message> validMessages = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message == null || !isValidMessageText(message.getMessage_text())) {
+                results[i] = MessageBatchResult.rejected(i, "Error: Message not processed");
+            } else if (!existingUsers.contains(message.getPosted_by())) {
+                results[i] = MessageBatchResult.rejected(i, "No User found");
+            } else {
+                validIndexes.add(i);
+                validMessages.add(message);
+            }
+        }
+
+        if (!validMessages.isEmpty()) {
+            List<Message> createdMessages = messageDAO.createMessages(validMessages);
+            for (int i = 0; i < validIndexes.size(); i++) {
+                int index = validIndexes.get(i);
+                if (createdMessages == null) {
+                    results[index] = MessageBatchResult.rejected(index, "Error: Message not created");
+                } else {
+                    messageCache.put(createdMessages.get(i));
+                    searchIndex.add(createdMessages.get(i));
+                    timelineAdded(createdMessages.get(i));
+                    results[index] = MessageBatchResult.created(index, createdMessages.get(i));
+                }
+            }
+        }
+        return List.of(results);
+    }
+
+    // Retrieve up to limit messages with a message_id greater than afterId, in message_id order.
+    public List<Message> retrieveMessagesAfter(int afterId, int limit) {
+        return messageDAO.retrieveMessagesAfter(afterId, limit);
+    }
+
+    // Stream up to limit messages with a message_id greater than afterId, in message_id order.
+    // Returns false if the query failed part way.
+    public boolean streamMessagesAfter(int afterId, int limit, MessageDAO.MessageHandler handler) throws IOException {
+        return messageDAO.streamMessagesAfter(afterId, limit, handler);
+    }
+
+    // Retrieve up to limit messages from the time range, in time_posted_epoch then message_id order.
+    public List<Message> retrieveMessagesInTimeRange(MessageTimeRange range, int limit) {
+        List<Message> messages = messageDAO.retrieveMessagesInTimeRange(range, limit);
+        if (messages == null) {
+            throw new IllegalStateException("Error: Messages could not be read");
+        }
+        return messages;
     }
 
-    // Retrieve all messages.
-    public List<Message> retrieveAllMessages() {
-        return messageDAO.retrieveAllMessages();
+    // Stream up to limit messages from the time range, in time_posted_epoch then message_id order.
+    // Returns false if the query failed part way.
+    public boolean streamMessagesInTimeRange(MessageTimeRange range, int limit, MessageDAO.MessageHandler handler) throws IOException {
+        return messageDAO.streamMessagesInTimeRange(range, limit, handler);
     }
 
-    // Retrieve a message by its mId.
+    // Retrieve a message by its mId, from the cache when possible.
     public Message retrieveMessageById(int mId) {
-        return messageDAO.retrieveMessageById(mId);
+        return messageCache.get(mId, messageDAO::retrieveMessageById);
     }
 
     // Delete a message by its mId if it exists.
     public Message deleteMessageByMessageId(int mId) {
-        return messageDAO.deleteMessageByMessageId(mId);
+        if (writeBehind != null) {
+            writeBehind.awaitFlushed(mId);     // The row does not exist until the message leaves the queue.
+        }
+        Message deletedMessage = messageDAO.deleteMessageByMessageId(mId);
+        messageCache.invalidate(mId);
+        searchIndex.remove(mId);
+        invalidated(mId);
+        if (deletedMessage != null) {
+            timelineCache.remove(deletedMessage);
+            timelineVersions.bump(deletedMessage.getPosted_by());
+        }
+        return deletedMessage;
     }
 
     /* Update a message by ID if:
@@ -61,10 +195,13 @@ public class MessageService {
      - new message_text is less than 255 characters.
      */
     public Message updateMessageByMessageId(int mId, String messageText) throws IllegalArgumentException {
-        if (messageText == null || messageText.isBlank() || messageText.length() > 255) {
+        if (!isValidMessageText(messageText)) {
             throw new IllegalArgumentException("Error: Message not processed");
         }
 
+        if (writeBehind != null) {
+            writeBehind.awaitFlushed(mId);
+        }
         Message message = new Message();
         message.setMessage_text(messageText);
 
@@ -72,11 +209,195 @@ public class MessageService {
         if (updatedMessage == null) {
             throw new IllegalArgumentException("Error: Message not updated");
         }
+        messageCache.put(updatedMessage);
+        searchIndex.add(updatedMessage);
+        timelineCache.replace(updatedMessage);
+        timelineVersions.bump(updatedMessage.getPosted_by());
+        invalidated(mId);
         return updatedMessage;
     }
 
-    // Retrieve all messages for user ID.
+    // Retrieve up to limit messages containing every word of the query, best match first.
+    public List<Message> searchMessages(String query, int limit) {
+        checkSearchable(query, searchIndex.ready(messageDAO).join());
+        return toMessages(searchIndex.search(query, limit));
+    }
+
+    // Asynchronous variants of the methods above. Database work runs on the DatabaseExecutor, so the calling thread
+    // is free while it waits; the returned futures fail with the same exceptions the synchronous methods throw.
+
+    // The posted_by check starts first so it overlaps with validating the text.
+    public CompletableFuture<Message> createMessageAsync(Message message) {
+        CompletableFuture<Boolean> userExists = accountService.accountExistsAsync(message.getPosted_by());
+        if (!isValidMessageText(message.getMessage_text())) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Error: Message not processed"));
+        }
+        return userExists.thenApplyAsync(exists -> {
+            if (!exists) {
+                throw new IllegalArgumentException("No User found");
+            }
+            return insertMessage(message);
+        }, DatabaseExecutor.get());
+    }
+
+    public CompletableFuture<List<MessageBatchResult>> createMessagesAsync(List<Message> messages) {
+        return DatabaseExecutor.supply(() -> createMessages(messages));
+    }
+
+    public CompletableFuture<List<Message>> retrieveMessagesAfterAsync(int afterId, int limit) {
+        return DatabaseExecutor.supply(() -> retrieveMessagesAfter(afterId, limit));
+    }
+
+    public CompletableFuture<List<Message>> retrieveMessagesInTimeRangeAsync(MessageTimeRange range, int limit) {
+        return DatabaseExecutor.supply(() -> retrieveMessagesInTimeRange(range, limit));
+    }
+
+    // Completes immediately, without touching the executor, when the message is cached.
+    public CompletableFuture<Message> retrieveMessageByIdAsync(int mId) {
+        if (messageCache.isCached(mId)) {
+            return CompletableFuture.completedFuture(retrieveMessageById(mId));
+        }
+        return DatabaseExecutor.supply(() -> retrieveMessageById(mId));
+    }
+
+    public CompletableFuture<Message> deleteMessageByMessageIdAsync(int mId) {
+        return DatabaseExecutor.supply(() -> deleteMessageByMessageId(mId));
+    }
+
+    public CompletableFuture<Message> updateMessageByMessageIdAsync(int mId, String messageText) {
+        if (!isValidMessageText(messageText)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Error: Message not processed"));
+        }
+        return DatabaseExecutor.supply(() -> updateMessageByMessageId(mId, messageText));
+    }
+
+    // Waits for the search index without holding an executor thread, as the index is built on the same executor.
+    public CompletableFuture<List<Message>> searchMessagesAsync(String query, int limit) {
+        return searchIndex.ready(messageDAO).thenCompose(built -> {
+            checkSearchable(query, built);
+            return DatabaseExecutor.supply(() -> toMessages(searchIndex.search(query, limit)));
+        });
+    }
+
+    public CompletableFuture<List<Message>> retrieveAllMessagesForUserIdAsync(int userId) {
+        return DatabaseExecutor.supply(() -> retrieveAllMessagesForUserId(userId));
+    }
+
+    public CompletableFuture<List<Message>> retrieveNewestMessagesForUserIdAsync(int userId, int limit) {
+        return DatabaseExecutor.supply(() -> retrieveNewestMessagesForUserId(userId, limit));
+    }
+
+    // Register a listener called with the message_id of each message that is updated or deleted.
+    public void addInvalidationListener(IntConsumer listener) {
+        invalidationListeners.add(listener);
+    }
+
+    // Register a listener called with each new message once it is stored: on insert, or when a queued message is
+    // written if write-behind is on.
+    public void addPostListener(Consumer<Message> listener) {
+        postListeners.add(listener);
+    }
+
+    // Stop hearing from the write-behind queue, which outlives this service.
+    @Override
+    public void close() {
+        if (writeBehind != null) {
+            writeBehind.removeFlushListener(flushListener);
+        }
+    }
+
+    // Counters of the write-behind queue, or null if new messages are inserted directly.
+    public MessageWriteBehind.Stats getWriteBehindStats() {
+        return writeBehind == null ? null : writeBehind.getStats();
+    }
+
+    // Hit rate, evictions and load latency of the message cache.
+    public MessageCache.Stats getCacheStats() {
+        return messageCache.getStats();
+    }
+
+    // How many times the user's messages have changed, and when they last did, for conditional requests.
+    public TimelineVersions.Version getTimelineVersion(int userId) {
+        return timelineVersions.get(userId);
+    }
+
+    // Terms and postings held by the search index.
+    public MessageSearchIndex.Stats getSearchStats() {
+        return searchIndex.getStats();
+    }
+
+    // Hits, fallbacks and evictions of the per-account timeline cache.
+    public TimelineCache.Stats getTimelineStats() {
+        return timelineCache.getStats();
+    }
+
+    // Retrieve all messages for user ID, in message_id order, from the timeline cache when it holds all of them.
     public List<Message> retrieveAllMessagesForUserId(int userId) {
-        return messageDAO.retrieveAllMessagesForUserId(userId);
+        List<Message> messages = timelineCache.all(userId, messageDAO::retrieveNewestMessagesForUserId);
+        return messages != null ? messages : messageDAO.retrieveAllMessagesForUserId(userId);
+    }
+
+    // Retrieve up to limit of the newest messages for user ID, newest first, from the timeline cache when it is deep
+    // enough.
+    public List<Message> retrieveNewestMessagesForUserId(int userId, int limit) {
+        List<Message> messages = timelineCache.newest(userId, limit, messageDAO::retrieveNewestMessagesForUserId);
+        if (messages == null) {
+            messages = messageDAO.retrieveNewestMessagesForUserId(userId, limit);
+        }
+        return messages != null ? messages : new ArrayList<>();
+    }
+
+    // Insert or queue a message that has passed validation and remember it in the cache.
+    private Message insertMessage(Message message) {
+        Message createdMessage = writeBehind != null ? writeBehind.enqueue(message) : messageDAO.createMessage(message);
+        if (createdMessage != null) {
+            messageCache.put(createdMessage);   // Replaces any cached "not found" for the new id.
+            searchIndex.add(createdMessage);
+            if (writeBehind == null) {
+                timelineAdded(createdMessage);
+            }
+        }
+        return createdMessage;
+    }
+
+    // A new message is in the database.
+    private void timelineAdded(Message message) {
+        timelineCache.add(message);
+        timelineVersions.bump(message.getPosted_by());
+        for (Consumer<Message> listener : postListeners) {
+            listener.accept(message);
+        }
+    }
+
+    // The messages with the given ids, in the same order, skipping any deleted since they were found.
+    private List<Message> toMessages(List<Integer> mIds) {
+        List<Message> messages = new ArrayList<>(mIds.size());
+        for (int mId : mIds) {
+            Message message = retrieveMessageById(mId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    private void checkSearchable(String query, boolean indexBuilt) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Error: Search query is empty");
+        }
+        if (!indexBuilt) {
+            throw new IllegalStateException("Error: Search index could not be built");
+        }
+    }
+
+    private void invalidated(int mId) {
+        for (IntConsumer listener : invalidationListeners) {
+            listener.accept(mId);
+        }
+    }
+
+    // message_text must not be blank and must not be over 255 characters.
+    private boolean isValidMessageText(String messageText) {
+        return messageText != null && !messageText.isBlank() && messageText.length() <= 255;
     }
 }
@@ -0,0 +1,556 @@
+package Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+// Write-behind ingestion for new messages, enabled with the "messages.writeBehind" system property.
+//
+// A message is given an id from a block reserved ahead of time and handed to a single writer thread through a lock-free
+// queue. The writer appends everything waiting to a MessageJournal, syncs it once for all of them and then wakes their
+// producers, so a request never waits on a lock, a database call or another request's file I/O. The writer keeps the
+// journaled messages in journal order and writes up to flushSize of them per transaction, so many messages share one
+// commit, and it reserves the next block of ids while the current one is still in use. When queueSize messages are
+// waiting, new ones are turned away with TooManyRequestsException. After a crash, journaled messages that were not
+// flushed are written on the next start.
+//
+// A flushed batch counts as written only once a checkpoint for it is synced to the journal. Until then, updates and
+// deletes of its messages wait, so replaying a batch whose checkpoint was lost never undoes one of them.
+//
+// A batch the database refuses for a reason other than a transient one (a timeout, a deadlock, a lost connection) is
+// split in halves until the messages that cannot be written are isolated. Those are moved to a dead-letter journal, so
+// one bad row neither blocks the queue nor is lost; the rest of the batch is written. Transient failures are retried
+// with backoff.
+//
+// Reads other than by id see a queued message only once it has been flushed.
+public class MessageWriteBehind implements Closeable {
+    // Settings, read from system properties.
+    public static class Config {
+        public boolean enabled = Boolean.getBoolean("messages.writeBehind");
+        public int queueSize = Integer.getInteger("messages.writeBehind.queueSize", 10_000);
+        public int flushSize = Integer.getInteger("messages.writeBehind.flushSize", 500);
+        public long flushIntervalMs = Long.getLong("messages.writeBehind.flushIntervalMs", 10L);
+        public int idBlockSize = Integer.getInteger("messages.writeBehind.idBlockSize", 1000);
+        public String journalPath = System.getProperty("messages.writeBehind.journal", "./h2/message-journal.bin");
+        public long journalSegmentBytes = Long.getLong("messages.writeBehind.journalSegmentBytes", 64L << 20);
+        public String deadLetterPath = System.getProperty("messages.writeBehind.deadLetters", "./h2/message-dead-letters.bin");
+    }
+
+    // Told, on the writer thread, about queued messages once they are in the database or have been dead-lettered.
+    public interface FlushListener {
+        void flushed(List<Message> messages);
+
+        void deadLettered(List<Message> messages);
+    }
+
+    // Point-in-time view of the queue counters.
+    public static class Stats {
+        public final int pending;
+        public final long accepted;
+        public final long rejected;
+        public final long flushes;
+        public final long flushed;
+        public final long flushFailures;
+        public final long deadLettered;
+
+        Stats(int pending, long accepted, long rejected, long flushes, long flushed, long flushFailures,
+              long deadLettered) {
+            this.pending = pending;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.flushes = flushes;
+            this.flushed = flushed;
+            this.flushFailures = flushFailures;
+            this.deadLettered = deadLettered;
+        }
+    }
+
+    // A message waiting for the writer to journal it, and the producer waiting for the journal to be synced.
+    private static class Accepted {
+        final Message message;
+        final Thread producer;
+        volatile IOException failure;
+        volatile boolean answered;
+
+        Accepted(Message message, Thread producer) {
+            this.message = message;
+            this.producer = producer;
+        }
+    }
+
+    // Message ids reserved in the database, handed out without a lock.
+    private static class IdBlock {
+        final AtomicInteger next;
+        final int end;
+
+        IdBlock(int first, int size) {
+            next = new AtomicInteger(first);
+            end = first + size;
+        }
+    }
+
+    // A prefix of the journal that is in the database or dead-lettered, waiting for its checkpoint to be synced.
+    private static class FlushedBatch {
+        final List<Message> written;
+        final List<Message> refused;
+        final long flushedThrough;
+
+        FlushedBatch(List<Message> written, List<Message> refused, long flushedThrough) {
+            this.written = written;
+            this.refused = refused;
+            this.flushedThrough = flushedThrough;
+        }
+    }
+
+    // How long an update or delete waits for a still-queued message to be flushed.
+    private static final long AWAIT_FLUSH_TIMEOUT_MS = 5_000;
+    private static final long MAX_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // How often a producer waiting for the journal checks that the writer is still running.
+    private static final long WRITER_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static MessageWriteBehind configured;
+
+    private final MessageDAO messageDAO;
+    private final Config config;
+    private final ConcurrentLinkedQueue<Accepted> intake = new ConcurrentLinkedQueue<>();    // Not yet journaled.
+    private final AtomicInteger pending = new AtomicInteger();     // Accepted and not yet flushed.
+    private final Set<Integer> queuedIds = ConcurrentHashMap.newKeySet();   // Ids of the pending messages.
+    private final Thread writer;
+    private volatile boolean closing;
+
+    private volatile IdBlock idBlock;
+    private final AtomicReference<IdBlock> spareIdBlock = new AtomicReference<>();  // Reserved by the writer.
+    private final Object idBlockLock = new Object();    // Held only to move on from an exhausted block.
+
+    // Used only by the writer thread once it has started.
+    private final MessageJournal journal;
+    private final MessageJournal deadLetters;     // Messages the database refused, kept for inspection and repair.
+    private final ArrayDeque<Message> unflushed = new ArrayDeque<>();     // Journaled, in journal order.
+    private long firstUnflushedSequence;          // Journal sequence number of the head of unflushed.
+    private FlushedBatch uncheckpointed;          // Written, but its checkpoint could not be synced yet.
+
+    private final AtomicLong flushRequests = new AtomicLong();
+    private volatile long flushRequestsDone;
+    private final Object flushMonitor = new Object();
+    private final List<FlushListener> flushListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+
+    // The process-wide instance when write-behind is enabled, or null when it is not.
+    public static synchronized MessageWriteBehind configured() {
+        Config config = new Config();
+        if (!config.enabled) {
+            return null;
+        }
+        if (configured == null) {
+            configured = new MessageWriteBehind(new MessageDAO(), config);
+            Runtime.getRuntime().addShutdownHook(new Thread(configured::close, "message-write-behind-shutdown"));
+        }
+        return configured;
+    }
+
+    // Open the journals, write whatever the journal still holds from a previous run, reserve the first blocks of ids and
+    // start the writer thread.
+    public MessageWriteBehind(MessageDAO messageDAO, Config config) {
+        this.messageDAO = messageDAO;
+        this.config = config;
+        try {
+            journal = new MessageJournal(Path.of(config.journalPath), config.journalSegmentBytes);
+            deadLetters = new MessageJournal(Path.of(config.deadLetterPath));
+            List<Message> replayed = journal.readUnflushed();
+            for (int i = 0; i < replayed.size(); i += config.flushSize) {
+                try {
+                    write(replayed.subList(i, Math.min(replayed.size(), i + config.flushSize)),
+                            new ArrayList<>(), new ArrayList<>());
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error: Could not replay the message journal", e);
+                }
+            }
+            journal.checkpoint(journal.lastSequence());
+            firstUnflushedSequence = journal.lastSequence() + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        idBlock = reserveIdBlock();
+        spareIdBlock.set(reserveIdBlock());
+
+        writer = new Thread(this::writeLoop, "message-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Assign the message an id and queue it. Returns once the message is in the synced journal.
+    public Message enqueue(Message message) {
+        if (closing) {
+            throw new IllegalStateException("Error: Message queue is closed");
+        }
+        if (pending.incrementAndGet() > config.queueSize) {
+            pending.decrementAndGet();
+            rejected.increment();
+            throw new TooManyRequestsException("Error: Message queue is full");
+        }
+
+        int mId;
+        try {
+            mId = nextId();
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+        message.setMessage_id(mId);
+        queuedIds.add(mId);
+        Accepted entry = new Accepted(message, Thread.currentThread());
+        intake.add(entry);
+        accepted.increment();
+        LockSupport.unpark(writer);
+
+        boolean interrupted = false;
+        while (!entry.answered) {
+            LockSupport.parkNanos(this, WRITER_CHECK_NANOS);
+            interrupted |= Thread.interrupted();
+            if (!entry.answered && !writer.isAlive() && intake.remove(entry)) {
+                released(List.of(message));     // The writer stopped before it took the message.
+                throw new IllegalStateException("Error: Message queue is closed");
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (entry.failure != null) {
+            throw new UncheckedIOException(entry.failure);  // Still queued, but not acknowledged as durable.
+        }
+        return message;
+    }
+
+    // Wait, for a bounded time, until a message with this id is no longer waiting in the queue.
+    public void awaitFlushed(int mId) {
+        long deadline = System.currentTimeMillis() + AWAIT_FLUSH_TIMEOUT_MS;
+        synchronized (flushMonitor) {
+            while (queuedIds.contains(mId)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                LockSupport.unpark(writer);
+                try {
+                    flushMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Tell listener about each batch once it is in the database, from the writer thread.
+    public void addFlushListener(FlushListener listener) {
+        flushListeners.add(listener);
+    }
+
+    public void removeFlushListener(FlushListener listener) {
+        flushListeners.remove(listener);
+    }
+
+    // Have the writer write everything queued so far, and wait until it has or a write fails.
+    public void flush() {
+        long request = flushRequests.incrementAndGet();
+        LockSupport.unpark(writer);
+        synchronized (flushMonitor) {
+            while (flushRequestsDone < request && writer.isAlive()) {
+                try {
+                    flushMonitor.wait(TimeUnit.NANOSECONDS.toMillis(WRITER_CHECK_NANOS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(pending.get(), accepted.sum(), rejected.sum(), flushes.sum(), flushed.sum(), flushFailures.sum(),
+                deadLettered.sum());
+    }
+
+    // Stop the writer after it has written what is queued. Anything it cannot write stays in the journal.
+    @Override
+    public void close() {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(AWAIT_FLUSH_TIMEOUT_MS);
+            journal.close();
+            deadLetters.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int nextId() {
+        while (true) {
+            IdBlock block = idBlock;
+            int mId = block.next.getAndIncrement();
+            if (mId < block.end) {
+                return mId;
+            }
+            nextIdBlock(block);
+        }
+    }
+
+    // Move on from an exhausted block to the spare the writer reserved, or to a block reserved here if the writer has
+    // not caught up. Only the first producer to find the block exhausted moves on; the others take ids from the new one.
+    private void nextIdBlock(IdBlock exhausted) {
+        synchronized (idBlockLock) {
+            if (idBlock == exhausted) {
+                IdBlock spare = spareIdBlock.getAndSet(null);
+                idBlock = spare != null ? spare : reserveIdBlock();
+            }
+        }
+        LockSupport.unpark(writer);     // To reserve the next spare.
+    }
+
+    private IdBlock reserveIdBlock() {
+        int first = messageDAO.reserveMessageIds(config.idBlockSize);
+        if (first < 0) {
+            throw new IllegalStateException("Error: Could not reserve message ids");
+        }
+        return new IdBlock(first, config.idBlockSize);
+    }
+
+    private void writeLoop() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.flushIntervalMs);
+        long backoffNanos = intervalNanos;
+        long nextFlushNanos = System.nanoTime() + intervalNanos;
+        while (true) {
+            boolean stopping = closing;
+            long requested = flushRequests.get();
+            journalAccepted();
+            if (spareIdBlock.get() == null) {
+                int first = messageDAO.reserveMessageIds(config.idBlockSize);
+                if (first >= 0) {
+                    spareIdBlock.compareAndSet(null, new IdBlock(first, config.idBlockSize));
+                }
+            }
+
+            boolean drain = stopping || requested > flushRequestsDone;
+            boolean failed = false;
+            if (drain || unflushed.size() >= config.flushSize || System.nanoTime() - nextFlushNanos >= 0) {
+                do {
+                    failed = !flushOnce();
+                    journalAccepted();
+                } while (!failed && !unflushed.isEmpty() && (drain || unflushed.size() >= config.flushSize));
+                nextFlushNanos = System.nanoTime() + intervalNanos;
+            }
+            if (requested > flushRequestsDone) {
+                synchronized (flushMonitor) {
+                    flushRequestsDone = requested;
+                    flushMonitor.notifyAll();
+                }
+            }
+
+            if (stopping && intake.isEmpty() && (failed || (unflushed.isEmpty() && uncheckpointed == null))) {
+                return;     // Anything the database did not take is left to journal replay.
+            }
+            if (failed) {
+                LockSupport.parkNanos(this, backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, MAX_RETRY_BACKOFF_NANOS);
+            } else {
+                backoffNanos = intervalNanos;
+                if (intake.isEmpty() && unflushed.size() < config.flushSize && !closing
+                        && flushRequests.get() == flushRequestsDone) {
+                    LockSupport.parkNanos(this, Math.max(0, nextFlushNanos - System.nanoTime()));
+                }
+            }
+        }
+    }
+
+    // Append every message waiting in intake to the journal, sync it once, and answer their producers. A message is
+    // queued for writing once it is appended, even if the sync then fails.
+    private void journalAccepted() {
+        Accepted first = intake.poll();
+        if (first == null) {
+            return;
+        }
+        List<Accepted> entries = new ArrayList<>();
+        for (Accepted entry = first; entry != null; entry = intake.poll()) {
+            entries.add(entry);
+        }
+
+        int appended = 0;
+        IOException failure = null;
+        try {
+            for (Accepted entry : entries) {
+                journal.append(entry.message);
+                unflushed.addLast(entry.message);
+                appended++;
+            }
+            journal.sync();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            if (appended < entries.size()) {
+                if (failure == null) {
+                    failure = new IOException("Error: Could not journal the message");
+                }
+                List<Message> notQueued = new ArrayList<>(entries.size() - appended);
+                for (Accepted entry : entries.subList(appended, entries.size())) {
+                    notQueued.add(entry.message);
+                }
+                released(notQueued);
+            }
+            for (Accepted entry : entries) {
+                entry.failure = failure;
+                entry.answered = true;
+                LockSupport.unpark(entry.producer);
+            }
+        }
+    }
+
+    // Write the oldest batch of up to flushSize journaled messages, in a single transaction unless some of them are
+    // refused, and checkpoint it. Returns false if a transient failure left some of it to retry.
+    private boolean flushOnce() {
+        if (uncheckpointed != null && !checkpoint(uncheckpointed)) {
+            return false;
+        }
+        if (unflushed.isEmpty()) {
+            return true;
+        }
+
+        List<Message> batch = new ArrayList<>(Math.min(config.flushSize, unflushed.size()));
+        for (Message message : unflushed) {
+            if (batch.size() == config.flushSize) {
+                break;
+            }
+            batch.add(message);
+        }
+        List<Message> written = new ArrayList<>(batch.size());
+        List<Message> refused = new ArrayList<>();
+        boolean complete = true;
+        try {
+            write(batch, written, refused);
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            flushFailures.increment();
+            complete = false;
+        }
+        // Written and dead-lettered messages are always a prefix of the batch; the rest waits for a retry.
+        int done = written.size() + refused.size();
+        if (done == 0) {
+            return false;
+        }
+        for (int i = 0; i < done; i++) {
+            unflushed.removeFirst();
+        }
+        firstUnflushedSequence += done;
+        flushes.increment();
+        flushed.add(written.size());
+        return checkpoint(new FlushedBatch(written, refused, firstUnflushedSequence - 1)) && complete;
+    }
+
+    // Sync a checkpoint for a flushed batch, then stop holding its messages back and tell the listeners. If the sync
+    // fails, the batch is kept to checkpoint again before anything else is written.
+    private boolean checkpoint(FlushedBatch batch) {
+        try {
+            journal.checkpoint(batch.flushedThrough);
+        } catch (IOException e) {
+            e.printStackTrace();
+            flushFailures.increment();
+            uncheckpointed = batch;
+            return false;
+        }
+        uncheckpointed = null;
+        for (FlushListener listener : flushListeners) {
+            if (!batch.written.isEmpty()) {
+                listener.flushed(batch.written);
+            }
+            if (!batch.refused.isEmpty()) {
+                listener.deadLettered(batch.refused);
+            }
+        }
+        released(batch.written);
+        released(batch.refused);
+        return true;
+    }
+
+    // Messages that are no longer pending, so updates and deletes waiting for them can go ahead.
+    private void released(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        for (Message message : messages) {
+            queuedIds.remove(message.getMessage_id());
+        }
+        pending.addAndGet(-messages.size());
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+    }
+
+    // Write messages in order, adding them to written, or to refused once they are in the dead-letter journal. A
+    // failure that is not transient is taken to come from the rows, so the messages are written again in two halves,
+    // down to single messages, and a single message that still fails is dead-lettered. A transient failure, or one to
+    // append to the dead-letter journal, is thrown and leaves the messages not yet added to either list unwritten.
+    private void write(List<Message> messages, List<Message> written, List<Message> refused) throws SQLException, IOException {
+        try {
+            messageDAO.writeMessages(messages);
+            written.addAll(messages);
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            if (messages.size() > 1) {
+                int half = messages.size() / 2;
+                write(messages.subList(0, half), written, refused);
+                write(messages.subList(half, messages.size()), written, refused);
+                return;
+            }
+            Message message = messages.get(0);
+            deadLetters.append(message);
+            deadLetters.sync();
+            deadLettered.increment();
+            refused.add(message);
+            System.err.println("Message " + message.getMessage_id() + " could not be written and was moved to "
+                    + config.deadLetterPath + ": " + e);
+        }
+    }
+
+    // Whether a write may succeed if tried again unchanged: a lock timeout, a deadlock, a lost connection or no
+    // connection free in the pool. A failed JDBC batch carries the exceptions of its statements as next exceptions.
+    private static boolean isTransient(SQLException e) {
+        for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+            String state = cause.getSQLState();
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException
+                    || (state != null && (state.startsWith("08") || state.startsWith("40") || state.equals("HYT00")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Hashes passwords with PBKDF2-HMAC-SHA256. A stored hash reads "pbkdf2-sha256$<iterations>$<salt>$<hash>", with
+// salt and hash in Base64, so every row carries the cost it was made with. Raising auth.pbkdf2.iterations does not
+// invalidate existing rows; needsRehash tells the login path to store a stronger hash once it has the plaintext.
+// Rows from before hashing hold the plaintext itself; they still verify, and are upgraded the same way.
+public class PasswordHasher {
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int iterations;
+    private volatile String dummyHash;  // Verified against for unknown usernames; made on first use.
+
+    public PasswordHasher() {
+        this(Integer.getInteger("auth.pbkdf2.iterations", 600_000));
+    }
+
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    // A new salted hash of the password at the current cost.
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return SCHEME + "$" + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    // True if the password matches the stored hash, or the stored plaintext of a row from before hashing.
+    public boolean verify(String password, String stored) {
+        String[] fields = stored.split("\\$");
+        if (fields.length != 4 || !fields[0].equals(SCHEME)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(fields[3]);
+            return MessageDigest.isEqual(pbkdf2(password, base64.decode(fields[2]), Integer.parseInt(fields[1])), expected);
+        } catch (IllegalArgumentException e) {
+            return false;   // A malformed hash matches nothing.
+        }
+    }
+
+    // Spend the same time as verifying a real hash, so a login for an unknown username cannot be told apart by how
+    // long it takes. Always false.
+    public boolean verifyNothing(String password) {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = hash("not a password");
+            dummyHash = hash;
+        }
+        verify(password, hash);
+        return false;
+    }
+
+    // True if the stored value is plaintext or was hashed at a lower cost than the current one.
+    public boolean needsRehash(String stored) {
+        String[] fields = stored.split("\\$");
+        try {
+            return fields.length != 4 || !fields[0].equals(SCHEME) || Integer.parseInt(fields[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);     // Every JVM since 8 provides PBKDF2WithHmacSHA256.
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
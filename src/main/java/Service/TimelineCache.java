@@ -0,0 +1,258 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import Model.Message;
+
+// Bounded LRU cache of per-account timelines: each holds the account's newest messages, up to depth of them, ordered
+// by message_id. A timeline is loaded on first read and then kept current by the write paths, so reads of popular
+// accounts do not query the database. A timeline that holds all of an account's messages is marked complete and
+// also answers requests for the full list. Memory is capped at maxAccounts timelines of depth messages each.
+// Message is mutable, so, like MessageCache, the cache keeps its own copies and every read returns new ones.
+public class TimelineCache {
+    // Loads up to limit of an account's newest messages, newest first, or returns null if it fails.
+    public interface Loader {
+        List<Message> load(int accountId, int limit);
+    }
+
+    // Point-in-time view of the cache counters.
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long fallbacks;
+        public final long evictions;
+        public final int accounts;
+
+        Stats(long hits, long misses, long fallbacks, long evictions, int accounts) {
+            this.hits = hits;
+            this.misses = misses;
+            this.fallbacks = fallbacks;
+            this.evictions = evictions;
+            this.accounts = accounts;
+        }
+    }
+
+    // An account's newest messages in a fixed-size ring, oldest at head. Guarded by the cache's entries lock.
+    private static class Timeline {
+        final Message[] slots;
+        int head;
+        int size;
+        boolean complete;   // True if no older messages exist outside the ring.
+
+        Timeline(int depth) {
+            slots = new Message[depth];
+        }
+
+        Message get(int i) {
+            return slots[(head + i) % slots.length];
+        }
+
+        void set(int i, Message message) {
+            slots[(head + i) % slots.length] = message;
+        }
+
+        int indexOf(int mId) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (get(i).getMessage_id() == mId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Insert in message_id order, dropping the oldest message if the ring is full.
+        void add(Message message) {
+            if (size == slots.length) {
+                if (message.getMessage_id() < get(0).getMessage_id()) {
+                    complete = false;   // Older than everything kept; only the database has it.
+                    return;
+                }
+                set(0, null);
+                head = (head + 1) % slots.length;
+                size--;
+                complete = false;
+            }
+            int i = size;
+            while (i > 0 && get(i - 1).getMessage_id() > message.getMessage_id()) {
+                set(i, get(i - 1));
+                i--;
+            }
+            set(i, message);
+            size++;
+        }
+
+        void remove(int index) {
+            for (int i = index; i < size - 1; i++) {
+                set(i, get(i + 1));
+            }
+            set(size - 1, null);
+            size--;
+        }
+    }
+
+    // Power of two, so an account's stripe is a mask of its id.
+    private static final int GENERATION_STRIPES = 256;
+
+    private final int depth;
+    private final LinkedHashMap<Integer, Timeline> entries;
+
+    // Bumped on every write to an account in the stripe, so a load that raced with a write to the same account does
+    // not install a stale timeline, while loads of other accounts are unaffected. Guarded by entries.
+    private final long[] writeGenerations = new long[GENERATION_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TimelineCache() {
+        this(Integer.getInteger("cache.timelines.maxAccounts", 10_000),
+                Integer.getInteger("cache.timelines.depth", 50));
+    }
+
+    public TimelineCache(int maxAccounts, int depth) {
+        this.depth = depth;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Timeline> eldest) {
+                if (size() > maxAccounts) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Up to limit of the account's newest messages, newest first, or null if more are asked for than the timeline
+    // holds and older ones may exist.
+    public List<Message> newest(int accountId, int limit, Loader loader) {
+        return read(accountId, loader, timeline -> {
+            if (limit > timeline.size && !timeline.complete) {
+                return null;
+            }
+            int count = Math.min(limit, timeline.size);
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = timeline.size - 1; i >= timeline.size - count; i--) {
+                messages.add(MessageCache.copy(timeline.get(i)));
+            }
+            return messages;
+        });
+    }
+
+    // All of the account's messages, oldest first, or null if the account has more than the timeline holds.
+    public List<Message> all(int accountId, Loader loader) {
+        return read(accountId, loader, timeline -> {
+            if (!timeline.complete) {
+                return null;
+            }
+            List<Message> messages = new ArrayList<>(timeline.size);
+            for (int i = 0; i < timeline.size; i++) {
+                messages.add(MessageCache.copy(timeline.get(i)));
+            }
+            return messages;
+        });
+    }
+
+    // A message was created.
+    public void add(Message message) {
+        synchronized (entries) {
+            writeGenerations[stripe(message.getPosted_by())]++;
+            Timeline timeline = entries.get(message.getPosted_by());
+            if (timeline != null && timeline.indexOf(message.getMessage_id()) < 0) {
+                timeline.add(MessageCache.copy(message));
+            }
+        }
+    }
+
+    // A message's text was changed.
+    public void replace(Message message) {
+        synchronized (entries) {
+            writeGenerations[stripe(message.getPosted_by())]++;
+            Timeline timeline = entries.get(message.getPosted_by());
+            if (timeline != null) {
+                int index = timeline.indexOf(message.getMessage_id());
+                if (index >= 0) {
+                    timeline.set(index, MessageCache.copy(message));
+                }
+            }
+        }
+    }
+
+    // A message was deleted. The ring is not refilled; reads that need the freed slot go to the database.
+    public void remove(Message message) {
+        synchronized (entries) {
+            writeGenerations[stripe(message.getPosted_by())]++;
+            Timeline timeline = entries.get(message.getPosted_by());
+            if (timeline != null) {
+                int index = timeline.indexOf(message.getMessage_id());
+                if (index >= 0) {
+                    timeline.remove(index);
+                }
+            }
+        }
+    }
+
+    public Stats getStats() {
+        int accounts;
+        synchronized (entries) {
+            accounts = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), fallbacks.sum(), evictions.sum(), accounts);
+    }
+
+    // Apply reader, under the entries lock, to the account's cached timeline, or to one loaded now, loading one more
+    // message than fits to learn whether it is complete. The loaded timeline is cached unless a write to the account
+    // raced with the load, and is read either way, so a miss costs a single query. The loaded messages are kept as
+    // they are, as nothing outside the cache holds them. Returns null if reader does, or if
+    // the load failed.
+    private List<Message> read(int accountId, Loader loader, Function<Timeline, List<Message>> reader) {
+        long generation;
+        synchronized (entries) {
+            Timeline timeline = entries.get(accountId);
+            if (timeline != null) {
+                hits.increment();
+                return fallbackIfNull(reader.apply(timeline));
+            }
+            generation = writeGenerations[stripe(accountId)];
+        }
+
+        misses.increment();
+        List<Message> newestFirst = loader.load(accountId, depth + 1);
+        if (newestFirst == null) {
+            fallbacks.increment();
+            return null;     // The load failed; leave the account uncached.
+        }
+        Timeline loaded = new Timeline(depth);
+        loaded.complete = newestFirst.size() <= depth;
+        for (int i = Math.min(depth, newestFirst.size()) - 1; i >= 0; i--) {
+            loaded.set(loaded.size++, newestFirst.get(i));
+        }
+
+        synchronized (entries) {
+            if (writeGenerations[stripe(accountId)] == generation) {
+                Timeline cached = entries.putIfAbsent(accountId, loaded);
+                if (cached != null) {
+                    loaded = cached;    // Another reader loaded it first and writes may have changed it since.
+                }
+            }
+            return fallbackIfNull(reader.apply(loaded));
+        }
+    }
+
+    private List<Message> fallbackIfNull(List<Message> messages) {
+        if (messages == null) {
+            fallbacks.increment();
+        }
+        return messages;
+    }
+
+    private static int stripe(int accountId) {
+        return accountId & (GENERATION_STRIPES - 1);
+    }
+}
@@ -0,0 +1,32 @@
+package Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-account change counters for the account's message list. A counter moves on every create, update and delete of
+// one of the account's messages, so a reader can tell the list has not changed without querying it. Counters start
+// again from zero when the process restarts.
+public class TimelineVersions {
+    // An account's change count and the time of its last change.
+    public static class Version {
+        public final long version;
+        public final long modifiedMillis;
+
+        Version(long version, long modifiedMillis) {
+            this.version = version;
+            this.modifiedMillis = modifiedMillis;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, Version> versions = new ConcurrentHashMap<>();
+    private final Version unchanged = new Version(0, System.currentTimeMillis());   // No change since startup.
+
+    public Version get(int accountId) {
+        return versions.getOrDefault(accountId, unchanged);
+    }
+
+    // One of the account's messages was created, updated or deleted.
+    public void bump(int accountId) {
+        versions.compute(accountId, (id, current) ->
+                new Version(current == null ? 1 : current.version + 1, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,23 @@
+package Service;
+
+// Thrown when a request is turned away because the server is at capacity, so the client should slow down and retry.
+public class TooManyRequestsException extends RuntimeException {
+    private final long retryAfterMillis;
+
+    public TooManyRequestsException(String message) {
+        super(message);
+        this.retryAfterMillis = 0;
+    }
+
+    // For a limit that knows when the client may try again. Rate limits throw these at attack rates, where filling in
+    // a stack trace would cost more than the check itself, and the trace says nothing the message does not.
+    public TooManyRequestsException(String message, long retryAfterMillis) {
+        super(message, null, false, false);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    // How long the client should wait before retrying, or 0 if unknown.
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
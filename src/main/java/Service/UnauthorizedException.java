@@ -0,0 +1,8 @@
+package Service;
+
+// Thrown when a request needs a valid token and did not carry one, so the client should log in again.
+public class UnauthorizedException extends RuntimeException {
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,600 @@
+package Util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of physical connections handed out by an underlying DataSource. Closing a connection obtained from
+ * this pool returns it to the pool instead of closing the physical connection, so DAOs can keep using
+ * try-with-resources and still reuse warm connections.
+ *
+ * The pool never holds more than maxSize connections. Callers wait up to acquireTimeoutMs for a free connection,
+ * idle connections above minSize are evicted after idleTimeoutMs, and connections held for longer than
+ * leakThresholdMs are reported along with the stack trace of the code that borrowed them.
+ *
+ * Each physical connection also keeps an LRU cache of prepared statements keyed by SQL text. Closing a statement
+ * prepared through a pooled connection parks it in that cache, so the next prepareStatement() call with the same SQL
+ * on that connection skips parsing and planning. Parameters, batches and settings such as the fetch size, row limit
+ * and query timeout are reset when a statement is parked, so the next caller gets it as freshly prepared.
+ */
+public class ConnectionPool implements DataSource {
+
+	/**
+	 * Tunables for the pool. Defaults can be overridden with the "db.pool.*" system properties.
+	 */
+	public static class Config {
+		public int minSize = Integer.getInteger("db.pool.minSize", 2);
+		public int maxSize = Integer.getInteger("db.pool.maxSize", 10);
+		public long acquireTimeoutMs = Long.getLong("db.pool.acquireTimeoutMs", 30_000L);
+		public long idleTimeoutMs = Long.getLong("db.pool.idleTimeoutMs", 600_000L);
+		public long leakThresholdMs = Long.getLong("db.pool.leakThresholdMs", 60_000L);
+		public long housekeepingIntervalMs = Long.getLong("db.pool.housekeepingIntervalMs", 30_000L);
+		public boolean validateOnBorrow = Boolean.parseBoolean(System.getProperty("db.pool.validateOnBorrow", "true"));
+		public int validationTimeoutSeconds = 1;
+		public int statementCacheSize = Integer.getInteger("db.pool.statementCacheSize", 32);
+	}
+
+	/**
+	 * Point-in-time view of the pool counters, suitable for logging or exporting to a monitoring system.
+	 */
+	public static class Stats {
+		public final int total;
+		public final int idle;
+		public final int active;
+		public final int waiting;
+		public final long created;
+		public final long destroyed;
+		public final long acquired;
+		public final long timeouts;
+		public final long validationFailures;
+		public final long leaksDetected;
+		public final long totalWaitNanos;
+		public final long maxWaitNanos;
+		public final long statementCacheHits;
+		public final long statementCacheMisses;
+		public final long statementCacheEvictions;
+
+		Stats(ConnectionPool pool) {
+			this.idle = pool.idle.size();
+			this.active = pool.leases.size();
+			this.total = pool.total.get();
+			this.waiting = pool.permits.getQueueLength();
+			this.created = pool.created.get();
+			this.destroyed = pool.destroyed.get();
+			this.acquired = pool.acquired.get();
+			this.timeouts = pool.timeouts.get();
+			this.validationFailures = pool.validationFailures.get();
+			this.leaksDetected = pool.leaksDetected.get();
+			this.totalWaitNanos = pool.totalWaitNanos.get();
+			this.maxWaitNanos = pool.maxWaitNanos.get();
+			this.statementCacheHits = pool.statementCacheHits.get();
+			this.statementCacheMisses = pool.statementCacheMisses.get();
+			this.statementCacheEvictions = pool.statementCacheEvictions.get();
+		}
+
+		@Override
+		public String toString() {
+			return "Stats{" +
+					"total=" + total +
+					", idle=" + idle +
+					", active=" + active +
+					", waiting=" + waiting +
+					", created=" + created +
+					", destroyed=" + destroyed +
+					", acquired=" + acquired +
+					", timeouts=" + timeouts +
+					", validationFailures=" + validationFailures +
+					", leaksDetected=" + leaksDetected +
+					", totalWaitNanos=" + totalWaitNanos +
+					", maxWaitNanos=" + maxWaitNanos +
+					", statementCacheHits=" + statementCacheHits +
+					", statementCacheMisses=" + statementCacheMisses +
+					", statementCacheEvictions=" + statementCacheEvictions +
+					'}';
+		}
+	}
+
+	/**
+	 * A physical connection owned by the pool, together with the statements cached on it.
+	 */
+	private class PooledConnection {
+		final Connection physical;
+		final StatementCache statements;
+		volatile long lastReturnedNanos = System.nanoTime();
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.statements = config.statementCacheSize > 0 ? new StatementCache(config.statementCacheSize) : null;
+		}
+	}
+
+	/**
+	 * Cache key for a prepared statement: the SQL text plus the generated-keys flag it was prepared with.
+	 */
+	private static class StatementKey {
+		final String sql;
+		final int autoGeneratedKeys;
+
+		StatementKey(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			StatementKey that = (StatementKey) o;
+			return autoGeneratedKeys == that.autoGeneratedKeys && sql.equals(that.sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(sql, autoGeneratedKeys);
+		}
+	}
+
+	/**
+	 * Statement setters whose effect would otherwise carry over to the next caller of a cached statement.
+	 */
+	private static final Set<String> STATEMENT_SETTERS = Set.of("setFetchSize", "setFetchDirection", "setMaxRows",
+			"setLargeMaxRows", "setMaxFieldSize", "setQueryTimeout");
+
+	/**
+	 * A physical prepared statement parked in a StatementCache. It is handed out to at most one caller at a time.
+	 */
+	private static class CachedStatement {
+		final PreparedStatement physical;
+		final int fetchSize;
+		final int fetchDirection;
+		final long maxRows;
+		final int maxFieldSize;
+		final int queryTimeout;
+		boolean inUse;
+		boolean evicted;
+		volatile boolean settingsChanged;	// Set through one of STATEMENT_SETTERS since it was checked out.
+
+		CachedStatement(PreparedStatement physical) throws SQLException {
+			this.physical = physical;
+			this.fetchSize = physical.getFetchSize();
+			this.fetchDirection = physical.getFetchDirection();
+			this.maxRows = physical.getLargeMaxRows();
+			this.maxFieldSize = physical.getMaxFieldSize();
+			this.queryTimeout = physical.getQueryTimeout();
+		}
+
+		// Put the settings back to what they were when the statement was prepared. The row limit goes first, as a
+		// driver may refuse a fetch size above it.
+		void resetSettings() throws SQLException {
+			physical.setLargeMaxRows(maxRows);
+			physical.setFetchSize(fetchSize);
+			physical.setFetchDirection(fetchDirection);
+			physical.setMaxFieldSize(maxFieldSize);
+			physical.setQueryTimeout(queryTimeout);
+			settingsChanged = false;
+		}
+	}
+
+	/**
+	 * Bounded LRU of prepared statements for one physical connection. Statements that fall out of the cache are
+	 * closed right away, or when their current user closes them if they are checked out.
+	 */
+	private class StatementCache extends LinkedHashMap<StatementKey, CachedStatement> {
+		private final int maxSize;
+
+		StatementCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StatementKey, CachedStatement> eldest) {
+			if (size() <= maxSize) {
+				return false;
+			}
+			statementCacheEvictions.incrementAndGet();
+			CachedStatement cached = eldest.getValue();
+			cached.evicted = true;
+			if (!cached.inUse) {
+				closeQuietly(cached.physical);
+			}
+			return true;
+		}
+
+		synchronized PreparedStatement checkout(Connection physical, StatementKey key) throws SQLException {
+			CachedStatement cached = get(key);
+			if (cached != null && !cached.inUse) {
+				statementCacheHits.incrementAndGet();
+			} else if (cached != null) {
+				// Same SQL prepared twice on one connection at once: the second copy is not cached.
+				statementCacheMisses.incrementAndGet();
+				return physical.prepareStatement(key.sql, key.autoGeneratedKeys);
+			} else {
+				statementCacheMisses.incrementAndGet();
+				cached = new CachedStatement(physical.prepareStatement(key.sql, key.autoGeneratedKeys));
+				put(key, cached);
+			}
+			cached.inUse = true;
+			return wrap(cached);
+		}
+
+		synchronized void checkin(CachedStatement cached) {
+			cached.inUse = false;
+			try {
+				if (cached.evicted || cached.physical.isClosed()) {
+					closeQuietly(cached.physical);
+					values().remove(cached);
+					return;
+				}
+				cached.physical.clearParameters();
+				cached.physical.clearBatch();
+				if (cached.settingsChanged) {
+					cached.resetSettings();
+				}
+			} catch (SQLException e) {
+				closeQuietly(cached.physical);
+				values().remove(cached);
+			}
+		}
+
+		private PreparedStatement wrap(CachedStatement cached) {
+			AtomicBoolean closed = new AtomicBoolean();
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+						switch (method.getName()) {
+							case "close":
+								if (closed.compareAndSet(false, true)) {
+									checkin(cached);
+								}
+								return null;
+							case "isClosed":
+								return closed.get();
+							case "equals":
+								return proxy == args[0];
+							case "hashCode":
+								return System.identityHashCode(proxy);
+							default:
+								if (closed.get()) {
+									throw new SQLException("Statement is closed");
+								}
+								if (STATEMENT_SETTERS.contains(method.getName())) {
+									cached.settingsChanged = true;
+								}
+								try {
+									return method.invoke(cached.physical, args);
+								} catch (InvocationTargetException e) {
+									throw e.getCause();
+								}
+						}
+					});
+		}
+	}
+
+	/**
+	 * One checkout of a pooled connection. The proxy handed to the caller is bound to the lease, so a reference kept
+	 * after close() cannot touch the connection once somebody else has borrowed it.
+	 */
+	private class Lease implements InvocationHandler {
+		final PooledConnection pooled;
+		final long borrowedNanos = System.nanoTime();
+		final Exception borrowSite;
+		final AtomicBoolean returned = new AtomicBoolean();
+		volatile boolean leakReported;
+
+		Lease(PooledConnection pooled) {
+			this.pooled = pooled;
+			this.borrowSite = config.leakThresholdMs > 0 ? new Exception("Connection borrowed here") : null;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+					if (returned.compareAndSet(false, true)) {
+						release(this);
+					}
+					return null;
+				case "isClosed":
+					return returned.get() || pooled.physical.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Pooled" + pooled.physical;
+				default:
+					if (returned.get()) {
+						throw new SQLException("Connection has already been returned to the pool");
+					}
+					if (pooled.statements != null && method.getName().equals("prepareStatement")) {
+						if (args.length == 1) {
+							return pooled.statements.checkout(pooled.physical,
+									new StatementKey((String) args[0], Statement.NO_GENERATED_KEYS));
+						}
+						if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+							return pooled.statements.checkout(pooled.physical,
+									new StatementKey((String) args[0], (Integer) args[1]));
+						}
+					}
+					try {
+						return method.invoke(pooled.physical, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+			}
+		}
+	}
+
+	private final DataSource target;
+	private final Config config;
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Map<Lease, Boolean> leases = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService housekeeper;
+
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong destroyed = new AtomicLong();
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong leaksDetected = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong statementCacheHits = new AtomicLong();
+	private final AtomicLong statementCacheMisses = new AtomicLong();
+	private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+	public ConnectionPool(DataSource target, Config config) {
+		if (config.maxSize < 1 || config.minSize < 0 || config.minSize > config.maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + config.minSize + ", max=" + config.maxSize);
+		}
+		this.target = target;
+		this.config = config;
+		this.permits = new Semaphore(config.maxSize, true);
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep, config.housekeepingIntervalMs,
+				config.housekeepingIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrow a connection, waiting up to acquireTimeoutMs for one to become available.
+	 *
+	 * @return a connection whose close() returns it to the pool
+	 * @throws SQLTransientConnectionException if none became available in time, so callers can retry later
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(config.acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new SQLTransientConnectionException("Timed out after " + config.acquireTimeoutMs + "ms waiting for a connection " + getStats());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}
+		recordWait(System.nanoTime() - start);
+
+		try {
+			PooledConnection pooled = borrowIdle();
+			if (pooled == null) {
+				pooled = open();
+			}
+			Lease lease = new Lease(pooled);
+			leases.put(lease, Boolean.TRUE);
+			acquired.incrementAndGet();
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[]{Connection.class}, lease);
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Pooled connections always use the configured credentials");
+	}
+
+	/**
+	 * @return a snapshot of the pool counters
+	 */
+	public Stats getStats() {
+		return new Stats(this);
+	}
+
+	/**
+	 * Close every idle connection and stop the housekeeping thread. Connections still on loan are closed as they are
+	 * returned.
+	 */
+	public void shutdown() {
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			destroy(pooled);
+		}
+	}
+
+	// Most recently returned connections are reused first so the warmest ones stay busy and the rest can age out.
+	private PooledConnection borrowIdle() {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (!config.validateOnBorrow || isValid(pooled)) {
+				return pooled;
+			}
+			validationFailures.incrementAndGet();
+			destroy(pooled);
+		}
+		return null;
+	}
+
+	private boolean isValid(PooledConnection pooled) {
+		try {
+			return pooled.physical.isValid(config.validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		Connection physical = target.getConnection();
+		total.incrementAndGet();
+		created.incrementAndGet();
+		return new PooledConnection(physical);
+	}
+
+	private void release(Lease lease) {
+		leases.remove(lease);
+		PooledConnection pooled = lease.pooled;
+		try {
+			if (pooled.physical.isClosed()) {
+				destroy(pooled);
+				return;
+			}
+			// Hand the next borrower a connection in the default state.
+			if (!pooled.physical.getAutoCommit()) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(true);
+			}
+			pooled.physical.clearWarnings();
+			pooled.lastReturnedNanos = System.nanoTime();
+			idle.offerFirst(pooled);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			destroy(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void destroy(PooledConnection pooled) {
+		total.decrementAndGet();
+		destroyed.incrementAndGet();
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void closeQuietly(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void recordWait(long waitNanos) {
+		totalWaitNanos.addAndGet(waitNanos);
+		maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+		Metrics.recordPoolWait(waitNanos);
+	}
+
+	// Runs on the housekeeper thread: evict stale idle connections, top the pool back up to minSize and report leaks.
+	private void housekeep() {
+		try {
+			long now = System.nanoTime();
+			long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.idleTimeoutMs);
+			while (total.get() > config.minSize) {
+				PooledConnection oldest = idle.peekLast();
+				if (oldest == null || now - oldest.lastReturnedNanos < idleTimeoutNanos || !idle.removeLastOccurrence(oldest)) {
+					break;
+				}
+				destroy(oldest);
+			}
+
+			while (total.get() < config.minSize && permits.tryAcquire()) {
+				try {
+					idle.offerLast(open());
+				} finally {
+					permits.release();
+				}
+			}
+
+			if (config.leakThresholdMs > 0) {
+				long leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.leakThresholdMs);
+				for (Lease lease : leases.keySet()) {
+					if (!lease.leakReported && now - lease.borrowedNanos > leakThresholdNanos) {
+						lease.leakReported = true;
+						leaksDetected.incrementAndGet();
+						System.err.println("Possible connection leak: connection held for more than "
+								+ config.leakThresholdMs + "ms");
+						lease.borrowSite.printStackTrace();
+					}
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return target.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		target.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		target.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return target.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return target.getParentLogger();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		return target.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || target.isWrapperFor(iface);
+	}
+}
@@ -0,0 +1,128 @@
+package Util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The DatabaseExecutor runs blocking database work off the request threads. It has a fixed number of threads, by
+ * default as many as the connection pool has connections, and a bounded queue. When the queue is full new work is
+ * rejected straight away with a RejectedExecutionException instead of piling up.
+ *
+ * Work submitted from a virtual thread, as request handlers run with server.threads=virtual, runs right there instead:
+ * blocking a virtual thread on JDBC costs no platform thread, so handing the work to a pool thread would only add a
+ * thread switch and cap concurrency at the pool's size. As many such calls may run at once as the executor holds
+ * threads and queued work, and further ones are rejected the same way; the connection pool still bounds how many reach
+ * the database together.
+ */
+public class DatabaseExecutor {
+
+	private static final int threads = Integer.getInteger("db.executor.threads",
+			Integer.getInteger("db.pool.maxSize", 10));
+	private static final int queueSize = Integer.getInteger("db.executor.queueSize", 1000);
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+			60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new DaemonThreadFactory(),
+			new ThreadPoolExecutor.AbortPolicy());
+
+	/**
+	 * Calls running on virtual threads, bounded like the executor's threads and queue together.
+	 */
+	private static final Semaphore virtualThreadPermits = new Semaphore(threads + queueSize);
+
+	/**
+	 * Thread.isVirtual(), or null before JDK 21, where no thread is virtual. Looked up reflectively as the code is
+	 * compiled for JDK 11 unless built on 21.
+	 */
+	private static final MethodHandle isVirtual = findIsVirtual();
+
+	private static final Executor callerOrExecutor = DatabaseExecutor::execute;
+
+	/**
+	 * @return an executor for chaining further stages, which runs them on the calling thread if it is virtual
+	 */
+	public static Executor get() {
+		return callerOrExecutor;
+	}
+
+	/**
+	 * Run work on the database executor, or right away if called from a virtual thread.
+	 *
+	 * @return a future for the result, failed with RejectedExecutionException if the executor is saturated
+	 */
+	public static <T> CompletableFuture<T> supply(Supplier<T> work) {
+		if (onVirtualThread()) {
+			if (!virtualThreadPermits.tryAcquire()) {
+				return CompletableFuture.failedFuture(new RejectedExecutionException("Too much database work in progress"));
+			}
+			try {
+				return CompletableFuture.completedFuture(work.get());
+			} catch (Throwable e) {
+				return CompletableFuture.failedFuture(e instanceof CompletionException ? e : new CompletionException(e));
+			} finally {
+				virtualThreadPermits.release();
+			}
+		}
+		try {
+			return CompletableFuture.supplyAsync(work, executor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	private static void execute(Runnable command) {
+		if (!onVirtualThread()) {
+			executor.execute(command);
+			return;
+		}
+		if (!virtualThreadPermits.tryAcquire()) {
+			throw new RejectedExecutionException("Too much database work in progress");
+		}
+		try {
+			command.run();
+		} finally {
+			virtualThreadPermits.release();
+		}
+	}
+
+	private static boolean onVirtualThread() {
+		if (isVirtual == null) {
+			return false;
+		}
+		try {
+			return (boolean) isVirtual.invokeExact(Thread.currentThread());
+		} catch (Throwable e) {
+			return false;
+		}
+	}
+
+	private static MethodHandle findIsVirtual() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "db-executor-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The HashingExecutor runs CPU-heavy password hashing off the request and database threads. It has one thread per
+ * core by default, as more would only contend for the same cores, and a short queue: by default four hashes per
+ * thread, so work that is accepted starts within a few hashing times. When the queue is full new work is rejected
+ * straight away with a RejectedExecutionException, so a login storm is shed with fast 503s instead of queueing
+ * requests until they time out.
+ */
+public class HashingExecutor {
+
+	private static final int threads = Integer.getInteger("auth.hash.threads",
+			Runtime.getRuntime().availableProcessors());
+	private static final int queueSize = Integer.getInteger("auth.hash.queueSize", 4 * threads);
+
+	private static final LongAdder rejected = new LongAdder();
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+			60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new DaemonThreadFactory(),
+			new ThreadPoolExecutor.AbortPolicy());
+
+	/**
+	 * Run work on the hashing executor.
+	 *
+	 * @return a future for the result, failed with RejectedExecutionException if the executor is saturated
+	 */
+	public static <T> CompletableFuture<T> supply(Supplier<T> work) {
+		try {
+			return CompletableFuture.supplyAsync(work, executor);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * @return the number of hashes waiting for a thread
+	 */
+	public static int queued() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of hashes turned away because the queue was full
+	 */
+	public static long rejected() {
+		return rejected.sum();
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "hashing-executor-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * The Metrics class collects request, DAO and connection pool measurements for the whole process and renders them in
+ * the Prometheus text exposition format.
+ *
+ * Recording is meant for the hot path: timers and routes are looked up once and then only update counters and
+ * fixed-size HdrHistograms, so recording a measurement does not allocate.
+ */
+public class Metrics {
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+	private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * A latency distribution in nanoseconds, reported as a Prometheus summary in seconds.
+	 */
+	public static class Timer {
+		private final Histogram histogram = new ConcurrentHistogram(1, MAX_TRACKABLE_NANOS, 2);
+		private final LongAdder sumNanos = new LongAdder();
+
+		public void record(long nanos) {
+			histogram.recordValue(Math.max(0, Math.min(nanos, MAX_TRACKABLE_NANOS)));
+			sumNanos.add(nanos);
+		}
+
+		public void recordSince(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public long count() {
+			return histogram.getTotalCount();
+		}
+	}
+
+	/**
+	 * Measurements for one HTTP route: latency, responses by status, caught exceptions by type and requests in flight.
+	 */
+	public static class Route {
+		private final Timer latency = new Timer();
+		private final AtomicLong inFlight = new AtomicLong();
+		private final AtomicReferenceArray<LongAdder> responsesByStatus = new AtomicReferenceArray<>(600);
+		private final Map<Class<?>, LongAdder> errorsByException = new ConcurrentHashMap<>();
+
+		public void begin() {
+			inFlight.incrementAndGet();
+		}
+
+		public void end(int status, long startNanos) {
+			latency.recordSince(startNanos);
+			inFlight.decrementAndGet();
+			if (status >= 100 && status < 600) {
+				LongAdder responses = responsesByStatus.get(status);
+				if (responses == null) {
+					responsesByStatus.compareAndSet(status, null, new LongAdder());
+					responses = responsesByStatus.get(status);
+				}
+				responses.increment();
+			}
+		}
+
+		public void recordError(Throwable error) {
+			errorsByException.computeIfAbsent(error.getClass(), type -> new LongAdder()).increment();
+		}
+	}
+
+	/**
+	 * Bytes in and out of one response compression algorithm, and the time spent compressing.
+	 */
+	private static class Compression {
+		private final Timer duration = new Timer();
+		private final LongAdder inputBytes = new LongAdder();
+		private final LongAdder outputBytes = new LongAdder();
+	}
+
+	private static final Map<String, Route> routes = new ConcurrentHashMap<>();
+	private static final Map<String, Compression> compressions = new ConcurrentHashMap<>();
+	private static final Map<String, Timer> daoTimers = new ConcurrentHashMap<>();
+	private static final Timer poolWait = new Timer();
+
+	/**
+	 * @return the metrics for a route, named like "GET /messages/{message_id}". Look this up once per route.
+	 */
+	public static Route route(String name) {
+		return routes.computeIfAbsent(name, key -> new Route());
+	}
+
+	/**
+	 * Record the time a DAO method took, given the System.nanoTime() at which it started.
+	 */
+	public static void recordDao(String method, long startNanos) {
+		long elapsed = System.nanoTime() - startNanos;
+		Timer timer = daoTimers.get(method);
+		if (timer == null) {
+			timer = daoTimers.computeIfAbsent(method, key -> new Timer());
+		}
+		timer.record(elapsed);
+	}
+
+	/**
+	 * Record how long a caller waited for a pooled connection.
+	 */
+	public static void recordPoolWait(long nanos) {
+		poolWait.record(nanos);
+	}
+
+	/**
+	 * Record one response body compressed with the given encoding, such as "gzip".
+	 */
+	public static void recordCompression(String encoding, long inputBytes, long outputBytes, long nanos) {
+		Compression compression = compressions.get(encoding);
+		if (compression == null) {
+			compression = compressions.computeIfAbsent(encoding, key -> new Compression());
+		}
+		compression.duration.record(nanos);
+		compression.inputBytes.add(inputBytes);
+		compression.outputBytes.add(outputBytes);
+	}
+
+	/**
+	 * @return every metric in the Prometheus text exposition format
+	 */
+	public static String scrape() {
+		StringBuilder out = new StringBuilder(4096);
+
+		Map<String, Route> sortedRoutes = new TreeMap<>(routes);
+		header(out, "http_request_duration_seconds", "summary", "Latency of HTTP requests by route.");
+		sortedRoutes.forEach((name, route) -> summary(out, "http_request_duration_seconds", "route", name, route.latency));
+
+		header(out, "http_requests_total", "counter", "HTTP responses by route and status code.");
+		sortedRoutes.forEach((name, route) -> {
+			for (int status = 100; status < 600; status++) {
+				LongAdder responses = route.responsesByStatus.get(status);
+				if (responses != null) {
+					sample(out, "http_requests_total", "route=\"" + escape(name) + "\",status=\"" + status + "\"", responses.sum());
+				}
+			}
+		});
+
+		header(out, "http_request_errors_total", "counter", "Exceptions caught while handling HTTP requests, by route and type.");
+		sortedRoutes.forEach((name, route) -> route.errorsByException.forEach((type, errors) ->
+				sample(out, "http_request_errors_total",
+						"route=\"" + escape(name) + "\",exception=\"" + type.getSimpleName() + "\"", errors.sum())));
+
+		header(out, "http_requests_in_flight", "gauge", "HTTP requests currently being handled, by route.");
+		sortedRoutes.forEach((name, route) ->
+				sample(out, "http_requests_in_flight", "route=\"" + escape(name) + "\"", route.inFlight.get()));
+
+		header(out, "dao_call_duration_seconds", "summary", "Latency of DAO methods.");
+		new TreeMap<>(daoTimers).forEach((name, timer) -> summary(out, "dao_call_duration_seconds", "method", name, timer));
+
+		Map<String, Compression> sortedCompressions = new TreeMap<>(compressions);
+		header(out, "http_response_compression_duration_seconds", "summary", "Time spent compressing response bodies, by encoding.");
+		sortedCompressions.forEach((encoding, compression) ->
+				summary(out, "http_response_compression_duration_seconds", "encoding", encoding, compression.duration));
+		header(out, "http_response_compression_input_bytes_total", "counter", "Response bytes before compression, by encoding.");
+		sortedCompressions.forEach((encoding, compression) -> sample(out, "http_response_compression_input_bytes_total",
+				"encoding=\"" + escape(encoding) + "\"", compression.inputBytes.sum()));
+		header(out, "http_response_compression_output_bytes_total", "counter", "Response bytes after compression, by encoding.");
+		sortedCompressions.forEach((encoding, compression) -> sample(out, "http_response_compression_output_bytes_total",
+				"encoding=\"" + escape(encoding) + "\"", compression.outputBytes.sum()));
+
+		ConnectionPool.Stats pool = ConnectionUtil.getPoolStats();
+		header(out, "db_pool_wait_seconds", "summary", "Time spent waiting for a pooled connection.");
+		summary(out, "db_pool_wait_seconds", null, null, poolWait);
+		gauge(out, "db_pool_connections_active", "Connections currently borrowed from the pool.", pool.active);
+		gauge(out, "db_pool_connections_idle", "Connections idle in the pool.", pool.idle);
+		gauge(out, "db_pool_threads_waiting", "Threads waiting for a pooled connection.", pool.waiting);
+		counter(out, "db_pool_acquire_timeouts_total", "Connection requests that timed out.", pool.timeouts);
+		counter(out, "db_pool_leaks_detected_total", "Connections held longer than the leak threshold.", pool.leaksDetected);
+		counter(out, "db_statement_cache_hits_total", "Prepared statements reused from the statement cache.", pool.statementCacheHits);
+		counter(out, "db_statement_cache_misses_total", "Prepared statements that had to be parsed and planned.", pool.statementCacheMisses);
+		return out.toString();
+	}
+
+	/**
+	 * Append a single-valued counter to a scrape.
+	 */
+	public static void counter(StringBuilder out, String name, String help, double value) {
+		header(out, name, "counter", help);
+		sample(out, name, null, value);
+	}
+
+	/**
+	 * Append a single-valued gauge to a scrape.
+	 */
+	public static void gauge(StringBuilder out, String name, String help, double value) {
+		header(out, name, "gauge", help);
+		sample(out, name, null, value);
+	}
+
+	private static void summary(StringBuilder out, String name, String labelName, String labelValue, Timer timer) {
+		String labels = labelName == null ? "" : labelName + "=\"" + escape(labelValue) + "\"";
+		String separator = labels.isEmpty() ? "" : ",";
+		for (double quantile : QUANTILES) {
+			double seconds = timer.histogram.getValueAtPercentile(quantile * 100) / 1e9;
+			sample(out, name, labels + separator + "quantile=\"" + quantile + "\"", seconds);
+		}
+		sample(out, name + "_sum", labels, timer.sumNanos.sum() / 1e9);
+		sample(out, name + "_count", labels, timer.count());
+	}
+
+	private static void header(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, double value) {
+		out.append(name);
+		if (labels != null && !labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append((long) value);
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+	}
+
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,108 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.tools.RunScript;
+
+/**
+ * The SchemaMigrator brings the database schema up to date by applying versioned sql scripts from
+ * src/main/resources/db/migration in order. Each applied script is recorded in the schema_version table, so a script
+ * runs at most once per database.
+ *
+ * To change the schema, add a new script named V{version}__{description}.sql and append it to MIGRATIONS. Never edit
+ * a script that has already been released.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * Migration scripts in the order they must be applied. The version is the number after the leading V.
+	 */
+	private static final String[] MIGRATIONS = {
+			"V1__baseline.sql",
+			"V2__message_posted_by_time_index.sql",
+			"V3__message_time_index.sql",
+			"V4__follow.sql",
+	};
+
+	private static final String MIGRATION_PATH = "db/migration/";
+
+	/**
+	 * Apply every migration newer than the current schema version.
+	 *
+	 * @return the schema version after migrating
+	 */
+	public static int migrate(Connection connection) throws SQLException {
+		createVersionTable(connection);
+		int currentVersion = currentVersion(connection);
+		for (String script : MIGRATIONS) {
+			int version = versionOf(script);
+			if (version > currentVersion) {
+				apply(connection, script, version);
+				currentVersion = version;
+			}
+		}
+		return currentVersion;
+	}
+
+	/**
+	 * @return the highest migration version recorded in schema_version, or 0 if none has been applied
+	 */
+	public static int currentVersion(Connection connection) throws SQLException {
+		createVersionTable(connection);
+		try (Statement stmt = connection.createStatement();
+			 ResultSet resultSet = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+	}
+
+	/**
+	 * Forget every applied migration. Used when the tables are dropped and recreated for tests.
+	 */
+	public static void reset(Connection connection) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("DROP TABLE IF EXISTS schema_version");
+		}
+	}
+
+	private static void createVersionTable(Connection connection) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+					"version int primary key, " +
+					"script varchar(255) not null, " +
+					"installed_on timestamp default current_timestamp)");
+		}
+	}
+
+	private static void apply(Connection connection, String script, int version) throws SQLException {
+		try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + script)) {
+			if (in == null) {
+				throw new SQLException("Migration script not found: " + MIGRATION_PATH + script);
+			}
+			try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+				RunScript.execute(connection, reader);
+			}
+		} catch (IOException e) {
+			throw new SQLException("Could not read migration script " + script, e);
+		}
+		try (PreparedStatement stmt = connection.prepareStatement(
+				"INSERT INTO schema_version(version, script) VALUES(?, ?)")) {
+			stmt.setInt(1, version);
+			stmt.setString(2, script);
+			stmt.executeUpdate();
+		}
+	}
+
+	private static int versionOf(String script) {
+		return Integer.parseInt(script.substring(1, script.indexOf("__")));
+	}
+}
@@ -0,0 +1,80 @@
+package Util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The TokenBucketTable rate limits by key with a token bucket per key, held in a fixed-size table so memory stays the
+ * same however many distinct keys are seen. Each slot is one long in an AtomicLongArray and is updated with a single
+ * compare-and-set, so threads never lock and contend only when they hit the same slot.
+ *
+ * A key is hashed with a per-table random seed to pick its slot. Keys that land on the same slot share a bucket, which
+ * can only make limiting stricter for them; with enough slots it is rare for keys that are active at the same time.
+ * Nothing needs expiring: a slot records when it was last drawn from, and one left alone long enough to refill reads
+ * as a full bucket, the same as one never used.
+ */
+public class TokenBucketTable {
+
+	// A slot holds the time of the last draw in its high bits and the tokens left then, in thousandths, in its low bits.
+	private static final int TOKEN_BITS = 22;
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+	private static final long ONE_TOKEN = 1000;
+
+	private final AtomicLongArray slots;
+	private final int mask;
+	private final int seed = ThreadLocalRandom.current().nextInt();
+	private final long capacity;            // In thousandths of a token.
+	private final double tokensPerSecond;   // Equal to thousandths of a token per millisecond.
+	private final long origin = System.nanoTime();
+
+	/**
+	 * @param slots number of buckets, rounded up to a power of two
+	 * @param burst tokens a bucket holds when full, at most 4000
+	 * @param tokensPerSecond rate at which a bucket refills
+	 */
+	public TokenBucketTable(int slots, int burst, double tokensPerSecond) {
+		if (burst < 1 || burst * ONE_TOKEN > TOKEN_MASK || tokensPerSecond <= 0) {
+			throw new IllegalArgumentException("burst must be between 1 and 4000 and the rate positive");
+		}
+		int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+		this.slots = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.capacity = burst * ONE_TOKEN;
+		this.tokensPerSecond = tokensPerSecond;
+	}
+
+	/**
+	 * Take a token from the key's bucket if it has one.
+	 *
+	 * @return 0 if a token was taken, otherwise the milliseconds until the bucket will have one
+	 */
+	public long tryAcquire(String key) {
+		int index = index(key);
+		long now = (System.nanoTime() - origin) / 1_000_000 + 1;   // Never 0, which marks an unused slot.
+		while (true) {
+			long state = slots.get(index);
+			long tokens = capacity;
+			if (state != 0) {
+				long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));   // Another thread may have drawn a moment later.
+				tokens = Math.min(capacity, (state & TOKEN_MASK) + (long) (elapsed * tokensPerSecond));
+			}
+			if (tokens < ONE_TOKEN) {
+				// Leave the slot as it is, so the refill keeps counting from the last draw.
+				return (long) Math.ceil((ONE_TOKEN - tokens) / tokensPerSecond);
+			}
+			if (slots.compareAndSet(index, state, (now << TOKEN_BITS) | (tokens - ONE_TOKEN))) {
+				return 0;
+			}
+		}
+	}
+
+	private int index(String key) {
+		int h = key.hashCode() ^ seed;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+}
@@ -0,0 +1,2 @@
+-- Per-user reads filter on posted_by and narrow or order by time_posted_epoch, newest first.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch desc);
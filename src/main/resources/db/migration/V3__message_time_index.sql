@@ -0,0 +1,7 @@
+-- Time-range reads filter on time_posted_epoch and page through the range in (time_posted_epoch, message_id) order,
+-- so the message id is part of each key and a page resumes where the last one ended without sorting.
+create index if not exists message_time_idx on message (time_posted_epoch, message_id);
+-- The same for one user. This replaces the newest-first index from V2, which per-user range pages could filter on
+-- but not read in order.
+create index if not exists message_posted_by_time_id_idx on message (posted_by, time_posted_epoch, message_id);
+drop index if exists message_posted_by_time_idx;
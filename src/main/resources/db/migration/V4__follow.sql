@@ -0,0 +1,10 @@
+-- Who follows whom. The primary key lists the accounts one account follows, which building its home feed reads; the
+-- second index lists an account's followers, which fanning its new messages out to their feeds reads.
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists follow_followee_idx on follow (followee_id, follower_id);
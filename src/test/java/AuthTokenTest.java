@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AuthTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient for interacting locally on the web. Each test
+     * starts the Javalin app itself, as some need tokens to be optional.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("auth.optional");
+    }
+
+    /**
+     * Sending POST localhost:8080/login, then POST localhost:8080/messages with the token, as the token's account and
+     * as another account, and with a forged token
+     *
+     * Expected Response:
+     *  Login sends a token in X-Auth-Token; posting with it succeeds for its own account only, posting for an account
+     *  that does not exist is refused with 400, and a forged token is refused with 401
+     */
+    @Test
+    public void loginIssuesTokenForOwnAccount() throws IOException, InterruptedException {
+        start();
+        register("otheruser");
+        String token = loginToken("testuser1");
+
+        Assert.assertEquals(200, send("POST", "/messages", token, message(1)).statusCode());
+        Assert.assertEquals(403, send("POST", "/messages", token, message(2)).statusCode());
+        Assert.assertEquals(400, send("POST", "/messages", token, message(99)).statusCode());
+        Assert.assertEquals(401, send("POST", "/messages", token.substring(0, token.length() - 2) + "xx", message(1)).statusCode());
+    }
+
+    /**
+     * Sending PATCH and DELETE localhost:8080/messages/1, which testuser1 posted, with another account's token
+     *
+     * Expected Response:
+     *  Status Code: 403, and the message is unchanged; the owner's token can update it
+     */
+    @Test
+    public void onlyTheOwnerCanChangeAMessage() throws IOException, InterruptedException {
+        start();
+        register("otheruser");
+        String otherToken = loginToken("otheruser");
+
+        Assert.assertEquals(403, send("PATCH", "/messages/1", otherToken, "{\"message_text\":\"not mine\"}").statusCode());
+        Assert.assertEquals(403, send("DELETE", "/messages/1", otherToken, null).statusCode());
+        Assert.assertEquals(200, send("PATCH", "/messages/1", loginToken("testuser1"), "{\"message_text\":\"mine\"}").statusCode());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages, PATCH and DELETE localhost:8080/messages/1 without a token
+     *
+     * Expected Response:
+     *  Status Code: 401, and the message is unchanged; with a token the post succeeds
+     */
+    @Test
+    public void tokensAreRequired() throws IOException, InterruptedException {
+        start();
+
+        Assert.assertEquals(401, send("POST", "/messages", null, message(1)).statusCode());
+        Assert.assertEquals(401, send("PATCH", "/messages/1", null, "{\"message_text\":\"not mine\"}").statusCode());
+        Assert.assertEquals(401, send("DELETE", "/messages/1", null, null).statusCode());
+        Assert.assertTrue(send("GET", "/messages/1", null, null).body().contains("\"message_text\":\"test message 1\""));
+        Assert.assertEquals(200, send("POST", "/messages", loginToken("testuser1"), message(1)).statusCode());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages without a token, and with another account's token, while auth.optional is
+     * set
+     *
+     * Expected Response:
+     *  Status Code: 200 without a token; a token that is sent is still checked, so the other account's gets 403
+     */
+    @Test
+    public void tokensCanBeMadeOptional() throws IOException, InterruptedException {
+        System.setProperty("auth.optional", "true");
+        start();
+        register("otheruser");
+
+        Assert.assertEquals(200, send("POST", "/messages", null, message(1)).statusCode());
+        Assert.assertEquals(403, send("POST", "/messages", loginToken("otheruser"), message(1)).statusCode());
+    }
+
+    private void start() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("POST", "/register", null, credentials(username)).statusCode());
+    }
+
+    private String loginToken(String username) throws IOException, InterruptedException {
+        HttpResponse<String> login = send("POST", "/login", null, credentials(username));
+        Assert.assertEquals(200, login.statusCode());
+        return login.headers().firstValue("X-Auth-Token").orElseThrow();
+    }
+
+    private static String credentials(String username) {
+        return "{\"username\": \"" + username + "\", \"password\": \"password\" }";
+    }
+
+    private static String message(int postedBy) {
+        return "{\"posted_by\":" + postedBy + ",\"message_text\":\"hello\",\"time_posted_epoch\":1669947792}";
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalRequestTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 again with the ETag of the first response, then again after the message
+     * was updated
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body while the message is unchanged, then 200 with a new ETag
+     */
+    @Test
+    public void getMessageByIdNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> unchanged = get("/messages/1", etag);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated message\"}"))
+                .header("Authorization", authorization)
+                .build());
+        HttpResponse<String> changed = get("/messages/1", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/1/messages again with the ETag of the first response, then again after the
+     * user posted a message
+     *
+     * Expected Response:
+     *  Status Code: 304 while the list is unchanged, then 200
+     *  Headers: ETag and Last-Modified
+     */
+    @Test
+    public void getAllMessagesFromUserNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/accounts/1/messages", null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        Assert.assertTrue(first.headers().firstValue("Last-Modified").isPresent());
+
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+        Assert.assertEquals(200, get("/accounts/1/messages?limit=1", etag).statusCode());
+
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1,\"message_text\":\"test message 2\",\"time_posted_epoch\":1669947793}"))
+                .header("Authorization", authorization)
+                .build());
+        Assert.assertEquals(200, get("/accounts/1/messages", etag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return send(request.build());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
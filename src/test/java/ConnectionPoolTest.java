@@ -0,0 +1,211 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.function.BooleanSupplier;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, point a DataSource at a private in-memory database, so the pools made here do not share
+     * connections with the application's.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:connection-pool-test;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * With maxSize connections on loan, a further borrower waits acquireTimeoutMs and is refused with a transient
+     * exception, and gets a connection once one is returned.
+     */
+    @Test
+    public void borrowingPastMaxSizeTimesOut() throws SQLException {
+        ConnectionPool.Config config = config();
+        config.maxSize = 2;
+        config.acquireTimeoutMs = 100;
+        pool = new ConnectionPool(dataSource, config);
+
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        long start = System.nanoTime();
+        Assert.assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+        Assert.assertTrue(System.nanoTime() - start >= 100_000_000L);
+        Assert.assertEquals(2, pool.getStats().total);
+        Assert.assertEquals(1, pool.getStats().timeouts);
+
+        first.close();
+        try (Connection third = pool.getConnection()) {
+            Assert.assertTrue(third.isValid(1));
+        }
+        second.close();
+        Assert.assertEquals(2, pool.getStats().total);
+        Assert.assertEquals(2, pool.getStats().created);
+    }
+
+    /**
+     * A returned connection is reused by the next borrower, and a reference kept after close can no longer use it.
+     */
+    @Test
+    public void returnedConnectionIsReused() throws SQLException {
+        pool = new ConnectionPool(dataSource, config());
+        Connection first = pool.getConnection();
+        first.close();
+        try (Connection second = pool.getConnection()) {
+            Assert.assertEquals(1, pool.getStats().created);
+            Assert.assertTrue(first.isClosed());
+            Assert.assertThrows(SQLException.class, first::createStatement);
+            Assert.assertFalse(second.isClosed());
+        }
+    }
+
+    /**
+     * Connections idle for longer than idleTimeoutMs are closed by the housekeeper, down to minSize.
+     */
+    @Test
+    public void idleConnectionsAreEvicted() throws SQLException, InterruptedException {
+        ConnectionPool.Config config = config();
+        config.minSize = 1;
+        config.idleTimeoutMs = 1;
+        config.housekeepingIntervalMs = 20;
+        pool = new ConnectionPool(dataSource, config);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+        Assert.assertEquals(2, pool.getStats().idle);
+
+        awaitStats(() -> pool.getStats().total == 1);
+        Assert.assertEquals(1, pool.getStats().destroyed);
+    }
+
+    /**
+     * An idle connection that stopped working is found on borrow, discarded, and replaced by a new one.
+     */
+    @Test
+    public void brokenIdleConnectionIsReplacedOnBorrow() throws SQLException {
+        pool = new ConnectionPool(dataSource, config());
+        Connection first = pool.getConnection();
+        Connection physical = first.unwrap(Connection.class);
+        first.close();
+        physical.close();   // Behind the pool's back, as a dropped network connection would.
+
+        try (Connection second = pool.getConnection()) {
+            Assert.assertTrue(second.isValid(1));
+        }
+        Assert.assertEquals(1, pool.getStats().validationFailures);
+        Assert.assertEquals(2, pool.getStats().created);
+        Assert.assertEquals(1, pool.getStats().total);
+    }
+
+    /**
+     * A connection held for longer than leakThresholdMs is reported once.
+     */
+    @Test
+    public void heldConnectionIsReportedAsLeak() throws SQLException, InterruptedException {
+        ConnectionPool.Config config = config();
+        config.leakThresholdMs = 50;
+        config.housekeepingIntervalMs = 20;
+        pool = new ConnectionPool(dataSource, config);
+        try (Connection held = pool.getConnection()) {
+            awaitStats(() -> pool.getStats().leaksDetected == 1);
+            Thread.sleep(100);
+            Assert.assertEquals(1, pool.getStats().leaksDetected);
+        }
+    }
+
+    /**
+     * Preparing the same SQL again on a connection is answered from its statement cache, a statement prepared to
+     * return generated keys is cached apart from one that is not, and the least recently used statement is evicted
+     * once statementCacheSize are cached.
+     */
+    @Test
+    public void statementsAreCachedBySqlAndGeneratedKeys() throws SQLException {
+        ConnectionPool.Config config = config();
+        config.statementCacheSize = 2;
+        pool = new ConnectionPool(dataSource, config);
+        try (Connection connection = pool.getConnection()) {
+            connection.prepareStatement("SELECT 1").close();
+            connection.prepareStatement("SELECT 1").close();
+            Assert.assertEquals(1, pool.getStats().statementCacheHits);
+            Assert.assertEquals(1, pool.getStats().statementCacheMisses);
+
+            connection.prepareStatement("SELECT 1", Statement.RETURN_GENERATED_KEYS).close();
+            Assert.assertEquals(2, pool.getStats().statementCacheMisses);
+            Assert.assertEquals(0, pool.getStats().statementCacheEvictions);
+
+            connection.prepareStatement("SELECT 2").close();
+            Assert.assertEquals(1, pool.getStats().statementCacheEvictions);
+            connection.prepareStatement("SELECT 1").close();    // The least recently used, so evicted.
+            Assert.assertEquals(4, pool.getStats().statementCacheMisses);
+        }
+    }
+
+    /**
+     * Settings changed on a cached statement do not carry over to the next borrower that prepares the same SQL.
+     */
+    @Test
+    public void statementSettingsAreResetForNextBorrower() throws SQLException {
+        pool = new ConnectionPool(dataSource, config());
+        int fetchSize;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT 1")) {
+            fetchSize = stmt.getFetchSize();
+            stmt.setFetchSize(fetchSize + 7);
+            stmt.setMaxRows(5);
+            stmt.setQueryTimeout(3);
+            stmt.setMaxFieldSize(10);
+        }
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT 1")) {
+            Assert.assertEquals(1, pool.getStats().statementCacheHits);
+            Assert.assertEquals(fetchSize, stmt.getFetchSize());
+            Assert.assertEquals(0, stmt.getMaxRows());
+            Assert.assertEquals(0, stmt.getQueryTimeout());
+            Assert.assertEquals(0, stmt.getMaxFieldSize());
+        }
+    }
+
+    // A small pool whose housekeeper stays out of the way unless a test asks for it.
+    private static ConnectionPool.Config config() {
+        ConnectionPool.Config config = new ConnectionPool.Config();
+        config.minSize = 0;
+        config.maxSize = 4;
+        config.acquireTimeoutMs = 1_000;
+        config.idleTimeoutMs = 600_000;
+        config.leakThresholdMs = 0;
+        config.housekeepingIntervalMs = 60_000;
+        return config;
+    }
+
+    // Wait up to five seconds for the housekeeper to bring the pool to the expected state.
+    private static void awaitStats(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out waiting for the housekeeper", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -21,14 +21,16 @@ public class CreateMessageTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
+     * @throws IOException
      * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() throws IOException, InterruptedException {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
@@ -36,6 +38,7 @@ public class CreateMessageTest {
         objectMapper = new ObjectMapper();
         app.start(8080);
         Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
     }
 
     @After
@@ -62,6 +65,7 @@ public class CreateMessageTest {
                         "\"message_text\": \"hello message\", " +
                         "\"time_posted_epoch\": 1669947792}"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -90,6 +94,7 @@ public class CreateMessageTest {
                         "\"message_text\": \"\", " +
                         "\"time_posted_epoch\": 1669947792}"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -115,6 +120,7 @@ public class CreateMessageTest {
                         "\"message_text\": \"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\", " +
                         "\"time_posted_epoch\": 1669947792}"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -140,6 +146,7 @@ public class CreateMessageTest {
                         "\"message_text\": \"message test\", " +
                         "\"time_posted_epoch\": 1669947792}"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with two valid messages, one blank message and
+     * one message from a user that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON list with the two created messages and an error for each rejected one
+     */
+    @Test
+    public void createMessagesPartialSuccess() throws IOException, InterruptedException {
+        HttpRequest postMessagesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":3, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build();
+        HttpResponse<String> response = webClient.send(postMessagesRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792), results.get(0).getMessage());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertNotNull(results.get(2).getError());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793), results.get(3).getMessage());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793),
+                objectMapper.readValue(getResponse.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with an empty list
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void createMessagesEmptyBatch() throws IOException, InterruptedException {
+        HttpRequest postMessagesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[]"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build();
+        HttpResponse<String> response = webClient.send(postMessagesRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+}
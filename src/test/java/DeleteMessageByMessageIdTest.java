@@ -22,14 +22,16 @@ public class DeleteMessageByMessageIdTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
+     * @throws IOException
      * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() throws IOException, InterruptedException {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
@@ -37,6 +39,7 @@ public class DeleteMessageByMessageIdTest {
         objectMapper = new ObjectMapper();
         app.start(8080);
         Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
     }
 
     @After
@@ -57,6 +60,7 @@ public class DeleteMessageByMessageIdTest {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create("http://localhost:8080/messages/1"))
                 .DELETE()
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -80,6 +84,7 @@ public class DeleteMessageByMessageIdTest {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create("http://localhost:8080/messages/100"))
                 .DELETE()
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Map<Integer, String> authorizations;    // Bearer tokens of the accounts that made writes, by account_id.
+
+    /**
+     * Before every test, reset the database, add accounts 2 and 3, restart the Javalin app, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addAccount("testuser2");
+        addAccount("testuser3");
+        startApp();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("feed.fanOutLimit");
+    }
+
+    /**
+     * Sending http requests for account 1 to follow accounts 2 and 3, then to GET localhost:8080/accounts/1/following
+     * and GET localhost:8080/accounts/2/followers
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: [2,3] and [1]
+     */
+    @Test
+    public void followAccounts() throws IOException, InterruptedException {
+        Assert.assertEquals(200, sendAs(1, "PUT", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(200, sendAs(1, "PUT", "/accounts/1/following/3", null).statusCode());
+        Assert.assertEquals(200, sendAs(1, "PUT", "/accounts/1/following/3", null).statusCode());
+
+        Assert.assertEquals("[2,3]", send("GET", "/accounts/1/following", null).body());
+        Assert.assertEquals("[1]", send("GET", "/accounts/2/followers", null).body());
+    }
+
+    /**
+     * Account 1 follows accounts 2 and 3. Account 2 posts before account 1 first reads its feed, and account 3 after,
+     * so the first message is found when the inbox is built and the second is pushed into it.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the two messages, newest first, without account 1's own message
+     */
+    @Test
+    public void feedFannedOutOnWrite() throws IOException, InterruptedException {
+        sendAs(1, "PUT", "/accounts/1/following/2", null);
+        sendAs(1, "PUT", "/accounts/1/following/3", null);
+        Message first = post(2, "first from 2", 1669947800);
+        Assert.assertEquals(List.of(first), feed(1));
+
+        Message second = post(3, "second from 3", 1669947801);
+        post(1, "mine", 1669947802);
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(second);
+        expectedResult.add(first);
+        Assert.assertEquals(expectedResult, feed(1));
+    }
+
+    /**
+     * With feed.fanOutLimit at 1, account 2, followed by accounts 1 and 3, has too many followers to be fanned out on
+     * write, so its messages are merged into the feed on read with those of account 3, which is fanned out.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the messages by accounts 2 and 3, newest first
+     */
+    @Test
+    public void feedFannedInOnRead() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("feed.fanOutLimit", "1");
+        startApp();
+        sendAs(1, "PUT", "/accounts/1/following/2", null);
+        sendAs(3, "PUT", "/accounts/3/following/2", null);
+        sendAs(1, "PUT", "/accounts/1/following/3", null);
+        Message first = post(2, "first from 2", 1669947800);
+        Assert.assertEquals(List.of(first), feed(1));
+
+        Message second = post(3, "second from 3", 1669947801);
+        Message third = post(2, "third from 2", 1669947802);
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(third);
+        expectedResult.add(second);
+        expectedResult.add(first);
+        Assert.assertEquals(expectedResult, feed(1));
+    }
+
+    /**
+     * Account 1 follows account 2 and reads its feed, then unfollows account 2 and reads its feed again.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: account 2's message, then an empty list
+     */
+    @Test
+    public void unfollowRemovesFromFeed() throws IOException, InterruptedException {
+        sendAs(1, "PUT", "/accounts/1/following/2", null);
+        Message message = post(2, "from 2", 1669947800);
+        Assert.assertEquals(List.of(message), feed(1));
+
+        Assert.assertEquals(200, sendAs(1, "DELETE", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(List.of(), feed(1));
+    }
+
+    /**
+     * Sending http requests for account 1 to follow itself and an account that does not exist, and for its feed with
+     * limit=0, then for account 1 to follow account 2 without a token and with account 3's token
+     *
+     * Expected Response:
+     *  Status Code: 400, then 401 and 403
+     */
+    @Test
+    public void invalidFollowsAndFeed() throws IOException, InterruptedException {
+        Assert.assertEquals(400, sendAs(1, "PUT", "/accounts/1/following/1", null).statusCode());
+        Assert.assertEquals(400, sendAs(1, "PUT", "/accounts/1/following/99", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/accounts/1/feed?limit=0", null).statusCode());
+
+        Assert.assertEquals(401, send("PUT", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals(403, sendAs(3, "PUT", "/accounts/1/following/2", null).statusCode());
+        Assert.assertEquals("[]", send("GET", "/accounts/1/following", null).body());
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        authorizations = new HashMap<>();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private List<Message> feed(int accountId) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "/accounts/" + accountId + "/feed", null);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private Message post(int postedBy, String text, long timePostedEpoch) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(new Message(postedBy, text, timePostedEpoch));
+        HttpResponse<String> response = sendAs(postedBy, "POST", "/messages", body);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        return webClient.send(request(method, path, body).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Send a request with the token of testuser<accountId>, logging the account in the first time.
+    private HttpResponse<String> sendAs(int accountId, String method, String path, String body) throws IOException, InterruptedException {
+        String authorization = authorizations.get(accountId);
+        if (authorization == null) {
+            authorization = TestTokens.bearer(webClient, "testuser" + accountId);
+            authorizations.put(accountId, authorization);
+        }
+        return webClient.send(request(method, path, body).header("Authorization", authorization).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpRequest.Builder request(String method, String path, String body) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private void addAccount(String username) {
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("insert into account (username, password) values (?, 'password')")) {
+            ps.setString(1, username);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LoginRateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending POST localhost:8080/login with a wrong password more times than the username's burst of 5 allows
+     *
+     * Expected Response:
+     *  Status Code: 401 for the first 5 attempts, then 429 with a Retry-After header, even for the right password
+     */
+    @Test
+    public void repeatedAttemptsForOneUsernameAreThrottled() throws IOException, InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(401, login("testuser1", "wrong password").statusCode());
+        }
+        HttpResponse<String> throttled = login("testuser1", "password");
+        Assert.assertEquals(429, throttled.statusCode());
+        Assert.assertTrue(Long.parseLong(throttled.headers().firstValue("Retry-After").orElseThrow()) > 0);
+    }
+
+    /**
+     * Sending POST localhost:8080/login for another username after one username was throttled
+     *
+     * Expected Response:
+     *  Status Code: 401, as the other username has attempts left and the address is under its limit
+     */
+    @Test
+    public void otherUsernamesAreNotThrottled() throws IOException, InterruptedException {
+        for (int i = 0; i < 6; i++) {
+            login("testuser1", "wrong password");
+        }
+        Assert.assertEquals(401, login("someoneelse", "wrong password").statusCode());
+    }
+
+    private HttpResponse<String> login(String username, String password) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\": \"" + username + "\", \"password\": \"" + password + "\" }"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
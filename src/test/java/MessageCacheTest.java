@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageCache;
+
+public class MessageCacheTest {
+    /**
+     * A write to another message while message 1 loads does not stop it from being cached, while a write to message 1
+     * itself does.
+     */
+    @Test
+    public void onlyWritesToTheSameMessageDuringLoadSkipCaching() {
+        MessageCache cache = new MessageCache(100, 1000);
+        List<Integer> loads = new ArrayList<>();
+
+        cache.get(1, mId -> {
+            loads.add(mId);
+            cache.invalidate(2);
+            return new Message(1, 1, "test message 1", 1669947792);
+        });
+        Assert.assertTrue(cache.isCached(1));
+
+        cache.get(3, mId -> {
+            loads.add(mId);
+            cache.invalidate(3);
+            return new Message(3, 1, "test message 3", 1669947793);
+        });
+        Assert.assertFalse(cache.isCached(3));
+        Assert.assertEquals(List.of(1, 3), loads);
+    }
+
+    /**
+     * Changing a message after putting it in the cache, or one returned by the cache, does not change the cached copy.
+     */
+    @Test
+    public void cachedMessagesAreCopies() {
+        MessageCache cache = new MessageCache(100, 1000);
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        cache.put(message);
+        message.setMessage_text("changed after put");
+
+        Message cached = cache.get(1, mId -> null);
+        Assert.assertEquals("test message 1", cached.getMessage_text());
+        cached.setMessage_text("changed after get");
+        Assert.assertEquals("test message 1", cache.get(1, mId -> null).getMessage_text());
+    }
+}
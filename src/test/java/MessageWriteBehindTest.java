@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageJournal;
+import Service.MessageWriteBehind;
+import Service.TooManyRequestsException;
+import Util.ConnectionUtil;
+
+public class MessageWriteBehindTest {
+    MessageDAO messageDAO;
+    Path journalDirectory;
+
+    /**
+     * Before every test, reset the database and make an empty directory for the journal.
+     */
+    @Before
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        journalDirectory = Files.createTempDirectory("message-journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (var files = Files.list(journalDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(journalDirectory);
+    }
+
+    /**
+     * Queued messages get ids after the existing rows and are in the database after a flush.
+     */
+    @Test
+    public void queuedMessagesAreWrittenOnFlush() {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(messageDAO, config(100, 60_000));
+        Message first = writeBehind.enqueue(new Message(1, "queued 1", 1669947792));
+        Message second = writeBehind.enqueue(new Message(1, "queued 2", 1669947793));
+        Assert.assertEquals(2, first.getMessage_id());
+        Assert.assertEquals(3, second.getMessage_id());
+        Assert.assertNull(messageDAO.retrieveMessageById(2));
+
+        writeBehind.flush();
+        Assert.assertEquals(first, messageDAO.retrieveMessageById(2));
+        Assert.assertEquals(second, messageDAO.retrieveMessageById(3));
+        writeBehind.close();
+    }
+
+    /**
+     * A message acknowledged but never flushed, as after a crash, is written from the journal on the next start.
+     */
+    @Test
+    public void unflushedMessagesAreReplayedFromJournal() {
+        MessageWriteBehind crashed = new MessageWriteBehind(messageDAO, config(100, 60_000));
+        Message acknowledged = crashed.enqueue(new Message(1, "survives a crash", 1669947792));
+        Assert.assertNull(messageDAO.retrieveMessageById(acknowledged.getMessage_id()));
+
+        MessageWriteBehind restarted = new MessageWriteBehind(messageDAO, config(100, 60_000));
+        Assert.assertEquals(acknowledged, messageDAO.retrieveMessageById(acknowledged.getMessage_id()));
+        restarted.close();
+        crashed.close();    // Stop the first writer so it cannot write into a later test's database.
+    }
+
+    /**
+     * Once queueSize messages are waiting, further messages are turned away.
+     */
+    @Test
+    public void fullQueueRejectsMessages() {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(messageDAO, config(2, 60_000));
+        writeBehind.enqueue(new Message(1, "queued 1", 1669947792));
+        writeBehind.enqueue(new Message(1, "queued 2", 1669947793));
+        Assert.assertThrows(TooManyRequestsException.class,
+                () -> writeBehind.enqueue(new Message(1, "queued 3", 1669947794)));
+        Assert.assertEquals(1, writeBehind.getStats().rejected);
+        writeBehind.close();
+    }
+
+    /**
+     * A message the database refuses, here for an account that does not exist, is moved to the dead-letter journal
+     * and the rest of its batch is written, in the same flush.
+     */
+    @Test
+    public void refusedMessageIsDeadLetteredAndRestOfBatchWritten() throws IOException {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(messageDAO, config(100, 60_000));
+        List<Message> flushed = new ArrayList<>();
+        List<Message> deadLettered = new ArrayList<>();
+        writeBehind.addFlushListener(new MessageWriteBehind.FlushListener() {
+            @Override
+            public void flushed(List<Message> messages) {
+                flushed.addAll(messages);
+            }
+
+            @Override
+            public void deadLettered(List<Message> messages) {
+                deadLettered.addAll(messages);
+            }
+        });
+        Message before = writeBehind.enqueue(new Message(1, "before", 1669947792));
+        Message refused = writeBehind.enqueue(new Message(99, "no such account", 1669947793));
+        Message after = writeBehind.enqueue(new Message(1, "after", 1669947794));
+
+        writeBehind.flush();
+        Assert.assertEquals(before, messageDAO.retrieveMessageById(before.getMessage_id()));
+        Assert.assertNull(messageDAO.retrieveMessageById(refused.getMessage_id()));
+        Assert.assertEquals(after, messageDAO.retrieveMessageById(after.getMessage_id()));
+        Assert.assertEquals(List.of(before, after), flushed);
+        Assert.assertEquals(List.of(refused), deadLettered);
+        Assert.assertEquals(1, writeBehind.getStats().deadLettered);
+        Assert.assertEquals(0, writeBehind.getStats().pending);
+        writeBehind.close();
+
+        try (MessageJournal deadLetters = new MessageJournal(journalDirectory.resolve("dead-letters.bin"))) {
+            Assert.assertEquals(List.of(refused), deadLetters.readUnflushed());
+        }
+    }
+
+    /**
+     * A listener that is removed is no longer told about flushed batches.
+     */
+    @Test
+    public void removedFlushListenerIsNotCalled() {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(messageDAO, config(100, 60_000));
+        List<Message> flushed = new ArrayList<>();
+        MessageWriteBehind.FlushListener listener = new MessageWriteBehind.FlushListener() {
+            @Override
+            public void flushed(List<Message> messages) {
+                flushed.addAll(messages);
+            }
+
+            @Override
+            public void deadLettered(List<Message> messages) {
+            }
+        };
+        writeBehind.addFlushListener(listener);
+        Message first = writeBehind.enqueue(new Message(1, "queued 1", 1669947792));
+        writeBehind.flush();
+        writeBehind.removeFlushListener(listener);
+        writeBehind.enqueue(new Message(1, "queued 2", 1669947793));
+        writeBehind.flush();
+
+        Assert.assertEquals(List.of(first), flushed);
+        writeBehind.close();
+    }
+
+    /**
+     * Once a flushed message's checkpoint is synced, replay after a crash does not write it again, so a delete made
+     * after the flush is not undone. The journal segments the checkpoints cover are deleted as the queue moves on.
+     */
+    @Test
+    public void checkpointedMessagesAreNotReplayedAndTheirSegmentsDeleted() throws IOException {
+        MessageWriteBehind.Config config = config(100, 60_000);
+        config.journalSegmentBytes = 1;     // A new segment at every checkpoint.
+        MessageWriteBehind crashed = new MessageWriteBehind(messageDAO, config);
+        Message deleted = crashed.enqueue(new Message(1, "deleted after the flush", 1669947792));
+        crashed.flush();
+        messageDAO.deleteMessageByMessageId(deleted.getMessage_id());
+        for (int i = 0; i < 5; i++) {
+            crashed.enqueue(new Message(1, "queued " + i, 1669947793 + i));
+            crashed.flush();
+        }
+        Message unflushed = crashed.enqueue(new Message(1, "survives a crash", 1669947800));
+
+        try (var files = Files.list(journalDirectory)) {
+            Assert.assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("journal.bin.")).count());
+        }
+        MessageWriteBehind restarted = new MessageWriteBehind(messageDAO, config);
+        Assert.assertNull(messageDAO.retrieveMessageById(deleted.getMessage_id()));
+        Assert.assertEquals(unflushed, messageDAO.retrieveMessageById(unflushed.getMessage_id()));
+        restarted.close();
+        crashed.close();
+    }
+
+    /**
+     * Messages queued from many threads at once get distinct ids, across several id blocks, and are all written.
+     */
+    @Test
+    public void concurrentMessagesGetDistinctIdsAndAreWritten() throws InterruptedException {
+        MessageWriteBehind writeBehind = new MessageWriteBehind(messageDAO, config(1000, 60_000));
+        List<Message> queued = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 25; i++) {
+                    queued.add(writeBehind.enqueue(new Message(1, "queued " + i, 1669947792 + i)));
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        writeBehind.flush();
+
+        Assert.assertEquals(200, queued.stream().map(Message::getMessage_id).distinct().count());
+        for (Message message : queued) {
+            Assert.assertEquals(message, messageDAO.retrieveMessageById(message.getMessage_id()));
+        }
+        Assert.assertEquals(0, writeBehind.getStats().pending);
+        writeBehind.close();
+    }
+
+    private MessageWriteBehind.Config config(int queueSize, long flushIntervalMs) {
+        MessageWriteBehind.Config config = new MessageWriteBehind.Config();
+        config.queueSize = queueSize;
+        config.flushSize = 100;
+        config.flushIntervalMs = flushIntervalMs;
+        config.idBlockSize = 10;
+        config.journalPath = journalDirectory.resolve("journal.bin").toString();
+        config.deadLetterPath = journalDirectory.resolve("dead-letters.bin").toString();
+        return config;
+    }
+}
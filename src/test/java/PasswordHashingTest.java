@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PasswordHashingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    AccountDAO accountDAO;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web and an AccountDAO for reading the stored passwords.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        accountDAO = new AccountDAO();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending POST localhost:8080/register, then POST localhost:8080/login with the same and with a wrong password
+     *
+     * Expected Result:
+     *  The stored password is a salted hash, not the plaintext; login succeeds with the password and fails without it
+     */
+    @Test
+    public void registeredPasswordIsStoredHashed() throws IOException, InterruptedException {
+        Assert.assertEquals(200, post("/register", "newuser", "secret password").statusCode());
+        String stored = accountDAO.searchByUser("newuser").getPassword();
+        Assert.assertTrue(stored, stored.startsWith("pbkdf2-sha256$"));
+        Assert.assertFalse(stored.contains("secret password"));
+
+        Assert.assertEquals(200, post("/login", "newuser", "secret password").statusCode());
+        Assert.assertEquals(401, post("/login", "newuser", "wrong password").statusCode());
+    }
+
+    /**
+     * Sending POST localhost:8080/login for the fixture account, whose password is stored as plaintext
+     *
+     * Expected Result:
+     *  Login succeeds, and the stored plaintext is replaced by a hash of it soon after
+     */
+    @Test
+    public void plaintextPasswordIsUpgradedOnLogin() throws IOException, InterruptedException {
+        Assert.assertEquals("password", accountDAO.searchByUser("testuser1").getPassword());
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+
+        String stored = accountDAO.searchByUser("testuser1").getPassword();
+        for (int i = 0; i < 50 && stored.equals("password"); i++) {
+            Thread.sleep(100);  // The upgrade is written after the response.
+            stored = accountDAO.searchByUser("testuser1").getPassword();
+        }
+        Assert.assertTrue(stored, stored.startsWith("pbkdf2-sha256$"));
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+    }
+
+    private HttpResponse<String> post(String path, String username, String password) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\": \"" + username + "\", \"password\": \"" + password + "\" }"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
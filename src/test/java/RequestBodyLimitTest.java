@@ -0,0 +1,85 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RequestBodyLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with a body over the 1 MiB limit and a Content-Length
+     *
+     * Expected Response:
+     *  Status Code: 413
+     */
+    @Test
+    public void oversizedBodyWithLengthIsRefused() throws IOException, InterruptedException {
+        HttpResponse<String> response = post(HttpRequest.BodyPublishers.ofByteArray(oversizedMessage()));
+        Assert.assertEquals(413, response.statusCode());
+    }
+
+    /**
+     * Sending POST localhost:8080/messages with a body over the 1 MiB limit, chunked so its length is not known
+     *
+     * Expected Response:
+     *  Status Code: 413
+     */
+    @Test
+    public void oversizedChunkedBodyIsRefused() throws IOException, InterruptedException {
+        byte[] body = oversizedMessage();
+        HttpResponse<String> response = post(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body)));
+        Assert.assertEquals(413, response.statusCode());
+    }
+
+    // A message whose text alone is larger than the limit.
+    private static byte[] oversizedMessage() {
+        char[] text = new char[1024 * 1024 + 1];
+        Arrays.fill(text, 'a');
+        return ("{\"posted_by\":1,\"message_text\":\"" + new String(text) + "\",\"time_posted_epoch\":1669947792}").getBytes();
+    }
+
+    private HttpResponse<String> post(HttpRequest.BodyPublisher body) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(body)
+                .header("Authorization", authorization)
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ResponseCompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper for
+     * interacting locally on the web, and post enough messages for list responses to be worth compressing.
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            batch.append(i == 0 ? "" : ",")
+                    .append("{\"posted_by\":1,\"message_text\":\"batch message ").append(i)
+                    .append("\",\"time_posted_epoch\":").append(1669947793 + i).append('}');
+        }
+        HttpResponse<byte[]> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append(']').toString()))
+                .header("Authorization", authorization)
+                .build());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages and GET localhost:8080/accounts/1/messages with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Headers: Content-Encoding: gzip
+     *  Response Body: the same messages as an uncompressed request, once decompressed
+     */
+    @Test
+    public void listResponsesAreGzipped() throws IOException, InterruptedException {
+        for (String path : List.of("/messages", "/messages?stream=true", "/accounts/1/messages", "/accounts/1/messages")) {
+            HttpResponse<byte[]> compressed = get(path, "gzip");
+            Assert.assertEquals(200, compressed.statusCode());
+            Assert.assertEquals("gzip", compressed.headers().firstValue("Content-Encoding").orElse(null));
+            byte[] json = new GZIPInputStream(new ByteArrayInputStream(compressed.body())).readAllBytes();
+            Assert.assertEquals(messages(get(path, null).body()), messages(json));
+        }
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with Accept-Encoding: zstd, gzip;q=0.5
+     *
+     * Expected Response:
+     *  Headers: Content-Encoding: zstd
+     *  Response Body: the same messages as an uncompressed request, once decompressed
+     */
+    @Test
+    public void zstdIsPreferredWhenAccepted() throws IOException, InterruptedException {
+        HttpResponse<byte[]> compressed = get("/messages", "zstd, gzip;q=0.5");
+        Assert.assertEquals("zstd", compressed.headers().firstValue("Content-Encoding").orElse(null));
+        byte[] json = new ZstdInputStream(new ByteArrayInputStream(compressed.body())).readAllBytes();
+        Assert.assertEquals(messages(get("/messages", null).body()), messages(json));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Headers: no Content-Encoding, as the body is below the compression threshold
+     */
+    @Test
+    public void smallResponsesAreNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get("/messages/1", "gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+    }
+
+    private List<Message> messages(byte[] json) throws IOException {
+        return objectMapper.readValue(json, new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return send(request.build());
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addMessage("test message 2", 1669947793);
+        addMessage("test message 3", 1669947794);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.maxListSize");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the first two messages
+     *  X-Next-Cursor: 2
+     */
+    @Test
+    public void getMessagesFirstPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=2");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("2", response.headers().firstValue("X-Next-Cursor").orElse(null));
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947793));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages, with no paging parameters, when messages.maxListSize is 2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the first two messages
+     *  X-Next-Cursor: 2
+     */
+    @Test
+    public void getAllMessagesIsCappedWithCursor() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("messages.maxListSize", "2");
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        HttpResponse<String> response = get("http://localhost:8080/messages");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("2", response.headers().firstValue("X-Next-Cursor").orElse(null));
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947793));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2&after=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the last message
+     *  X-Next-Cursor: absent
+     */
+    @Test
+    public void getMessagesLastPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=2&after=2");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("X-Next-Cursor").isPresent());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(3, 1, "test message 3", 1669947794));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true&limit=2&after=1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of messages 2 and 3
+     */
+    @Test
+    public void getMessagesStreamed() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?stream=true&limit=2&after=1");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("X-Next-Cursor").isPresent());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947793));
+        expectedResult.add(new Message(3, 1, "test message 3", 1669947794));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?stream=true&limit=2 over a raw HTTP/1.1 connection with "TE: trailers", as
+     * HttpClient does not expose trailers
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: chunked JSON representation of messages 1 and 2, followed by the trailer X-Next-Cursor: 2
+     */
+    @Test
+    public void getMessagesStreamedSendsCursorTrailer() throws IOException {
+        String response;
+        try (Socket socket = new Socket("localhost", 8080)) {
+            socket.getOutputStream().write(("GET /messages?stream=true&limit=2 HTTP/1.1\r\nHost: localhost\r\n"
+                    + "TE: trailers\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        Assert.assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        Assert.assertTrue(response, response.contains("\"message_text\":\"test message 2\""));
+        Assert.assertFalse(response, response.contains("test message 3"));
+        Assert.assertTrue(response, response.endsWith("0\r\nX-Next-Cursor: 2\r\n\r\n"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=0, and with stream=true and a limit over 100000
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesInvalidLimit() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=0");
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?stream=true&limit=100001").statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void addMessage(String text, long timePostedEpoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, text);
+            ps.setLong(2, timePostedEpoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 and then to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text including the request counter, latency summary and DAO timer for that route
+     */
+    @Test
+    public void getMetricsAfterRequest() throws IOException, InterruptedException {
+        HttpRequest messageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        webClient.send(messageRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        String body = response.body();
+        Assert.assertTrue(body, body.contains("http_requests_total{route=\"GET /messages/{message_id}\",status=\"200\"}"));
+        Assert.assertTrue(body, body.contains("http_request_duration_seconds_count{route=\"GET /messages/{message_id}\"}"));
+        Assert.assertTrue(body, body.contains("dao_call_duration_seconds_count{method=\"MessageDAO.retrieveMessageById\"}"));
+        Assert.assertTrue(body, body.contains("db_pool_connections_active"));
+    }
+}
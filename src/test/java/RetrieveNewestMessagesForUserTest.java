@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveNewestMessagesForUserTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=2 after posting two more messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON list of the two newest messages, newest first
+     */
+    @Test
+    public void getNewestMessagesFromUser() throws IOException, InterruptedException {
+        getMessages("/accounts/1/messages?limit=2");     // Cache the timeline before writing to it.
+        post("{\"posted_by\":1,\"message_text\":\"test message 2\",\"time_posted_epoch\":1669947793}");
+        post("{\"posted_by\":1,\"message_text\":\"test message 3\",\"time_posted_epoch\":1669947794}");
+
+        List<Message> expectedResult = List.of(
+                new Message(3, 1, "test message 3", 1669947794),
+                new Message(2, 1, "test message 2", 1669947793));
+        Assert.assertEquals(expectedResult, getMessages("/accounts/1/messages?limit=2"));
+    }
+
+    /**
+     * Updates and deletes show up in the newest messages and in the full list
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the remaining messages with the updated text
+     */
+    @Test
+    public void getNewestMessagesFromUserAfterUpdateAndDelete() throws IOException, InterruptedException {
+        post("{\"posted_by\":1,\"message_text\":\"test message 2\",\"time_posted_epoch\":1669947793}");
+        getMessages("/accounts/1/messages?limit=2");
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated message\"}"))
+                .header("Authorization", authorization)
+                .build());
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/2")).DELETE()
+                .header("Authorization", authorization).build());
+
+        List<Message> expectedResult = List.of(new Message(1, 1, "updated message", 1669947792));
+        Assert.assertEquals(expectedResult, getMessages("/accounts/1/messages?limit=2"));
+        Assert.assertEquals(expectedResult, getMessages("/accounts/1/messages"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getNewestMessagesFromUserInvalidLimit() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=0"))
+                .build());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private void post(String body) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
+                .build());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private List<Message> getMessages(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,76 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigrationTest {
+
+    /**
+     * Before every test, reset the database, which drops the tables and reapplies every migration.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * After a reset every migration is recorded, and migrating again changes nothing.
+     */
+    @Test
+    public void migrationsAppliedOnce() throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            int version = SchemaMigrator.currentVersion(conn);
+            Assert.assertTrue(version >= 2);
+            Assert.assertEquals(version, SchemaMigrator.migrate(conn));
+        }
+    }
+
+    /**
+     * Reading one user's messages goes through an index rather than scanning the message table.
+     */
+    @Test
+    public void messagesForUserUseIndex() throws SQLException {
+        String plan = explain("SELECT * FROM message WHERE posted_by = 1");
+        Assert.assertFalse(plan, plan.contains("tableScan"));
+    }
+
+    /**
+     * Reading a page of one user's messages in a time range seeks on the (posted_by, time_posted_epoch, message_id)
+     * index and reads the rows in its order instead of sorting them.
+     */
+    @Test
+    public void messagesForUserInTimeRangeUsePostedByTimeIndex() throws SQLException {
+        String plan = explain("SELECT * FROM message WHERE posted_by = 1 AND time_posted_epoch >= 1 AND time_posted_epoch < 2"
+                + " ORDER BY posted_by, time_posted_epoch, message_id LIMIT 10");
+        Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_ID_IDX"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    /**
+     * Reading a page of every user's messages in a time range seeks on the (time_posted_epoch, message_id) index and reads the
+     * rows in its order instead of sorting them.
+     */
+    @Test
+    public void messagesInTimeRangeUseTimeIndex() throws SQLException {
+        String plan = explain("SELECT * FROM message WHERE time_posted_epoch >= 1 AND time_posted_epoch < 2"
+                + " ORDER BY time_posted_epoch, message_id LIMIT 10");
+        Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_IDX"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    private String explain(String sql) throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("EXPLAIN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper for
+     * interacting locally on the web, and post messages 2 to 5 to search.
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+
+        for (String text : List.of("the quick brown fox", "Quick, quick fox!", "a lazy dog", "quick thinking")) {
+            HttpResponse<String> response = send("POST", "/messages",
+                    "{\"posted_by\":1,\"message_text\":\"" + text + "\",\"time_posted_epoch\":1669947793}");
+            Assert.assertEquals(200, response.statusCode());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search?q=quick%20fox
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages containing both words, the one with "quick" twice first
+     */
+    @Test
+    public void searchRanksMessagesContainingAllTerms() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 2), search("quick%20fox"));
+        Assert.assertEquals(List.of(3, 5, 2), search("QUICK"));
+        Assert.assertEquals(List.of(3), search("quick&limit=1"));
+        Assert.assertEquals(List.of(), search("quick%20cat"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search?q=test, for the message that was in the table when the app started
+     *
+     * Expected Response:
+     *  Response Body: message 1, found by the index built from the table
+     */
+    @Test
+    public void searchFindsMessagesFromBeforeStartup() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(1), search("test"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search after updating message 2 and deleting message 3
+     *
+     * Expected Response:
+     *  Response Body: the updated text is found under its new words only, and the deleted message not at all
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("PATCH", "/messages/2", "{\"message_text\":\"slow green turtle\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/3", null).statusCode());
+
+        Assert.assertEquals(List.of(5), search("quick"));
+        Assert.assertEquals(List.of(2), search("turtle"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search, then rewriting message 4 many times and posting another message
+     *
+     * Expected Response:
+     *  Response Body: the index, built by the first search, follows every later write, and words no message has any
+     *  more are no longer found
+     */
+    @Test
+    public void searchFollowsWritesAfterFirstSearch() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4), search("lazy"));
+
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals(200, send("PATCH", "/messages/4",
+                    "{\"message_text\":\"lazy cat " + i + " word" + i + "\"}").statusCode());
+        }
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\":1,\"message_text\":\"lazy fox\",\"time_posted_epoch\":1669947793}").statusCode());
+
+        Assert.assertEquals(List.of(4), search("word39"));
+        Assert.assertEquals(List.of(), search("word38"));
+        Assert.assertEquals(List.of(), search("dog"));
+        Assert.assertEquals(List.of(6, 4), search("lazy"));
+        Assert.assertEquals(List.of(6, 3, 2), search("fox"));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/search without q, or with a blank one
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutQueryIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("GET", "/messages/search", null).statusCode());
+        Assert.assertEquals(400, send("GET", "/messages/search?q=%20", null).statusCode());
+    }
+
+    private List<Integer> search(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", "/messages/search?q=" + query, null);
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>() {});
+        return messages.stream().map(Message::getMessage_id).collect(Collectors.toList());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Authorization", authorization)
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,31 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.Assert;
+
+/**
+ * Logs test accounts in, as message writes and follows need a bearer token. Every account the tests create, like the
+ * fixture account testuser1, has the password "password".
+ */
+public class TestTokens {
+    private TestTokens() {
+    }
+
+    /**
+     * Sends POST localhost:8080/login for the account and returns the value for an Authorization header carrying the
+     * token from the response's X-Auth-Token header.
+     */
+    public static String bearer(HttpClient webClient, String username) throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"" + username + "\", \"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return "Bearer " + response.headers().firstValue("X-Auth-Token").orElseThrow();
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimeRangeQueryTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a second account and four more messages, two of them posted at the
+     * same time and one posted before the fixture message, restart the Javalin app, and create a new webClient and
+     * ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addAccount("testuser2");
+        addMessage(1, "test message 2", 1669947800);
+        addMessage(2, "test message 3", 1669947800);
+        addMessage(1, "test message 4", 1669947810);
+        addMessage(1, "test message 5", 1669947790);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1669947792&until=1669947810&limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of messages 1 and 2, the first two in time order
+     *  X-Next-Cursor: 1669947800:2
+     */
+    @Test
+    public void getMessagesInTimeRangeFirstPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?since=1669947792&until=1669947810&limit=2");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("1669947800:2", response.headers().firstValue("X-Next-Cursor").orElse(null));
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947800));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1669947792&until=1669947810&limit=2&after=1669947800:2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of message 3, posted at the same time as message 2; message 4 is posted at
+     *  until and so is left out
+     *  X-Next-Cursor: absent
+     */
+    @Test
+    public void getMessagesInTimeRangeLastPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get(
+                "http://localhost:8080/messages?since=1669947792&until=1669947810&limit=2&after=1669947800:2");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("X-Next-Cursor").isPresent());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(3, 2, "test message 3", 1669947800));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?since=1669947790&stream=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the messages posted by account 1, in time order
+     */
+    @Test
+    public void getAccountMessagesInTimeRangeStreamed() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/messages?since=1669947790&stream=true");
+
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(5, 1, "test message 5", 1669947790));
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947800));
+        expectedResult.add(new Message(4, 1, "test message 4", 1669947810));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/1/messages?since=1669947790&stream=true&limit=2 over a raw HTTP/1.1
+     * connection with "TE: trailers", as HttpClient does not expose trailers
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: chunked JSON representation of messages 5 and 1, followed by the trailer
+     *  X-Next-Cursor: 1669947792:1
+     */
+    @Test
+    public void getAccountMessagesInTimeRangeStreamedSendsCursorTrailer() throws IOException {
+        String response;
+        try (Socket socket = new Socket("localhost", 8080)) {
+            socket.getOutputStream().write(("GET /accounts/1/messages?since=1669947790&stream=true&limit=2 HTTP/1.1\r\n"
+                    + "Host: localhost\r\nTE: trailers\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        Assert.assertTrue(response, response.startsWith("HTTP/1.1 200"));
+        Assert.assertTrue(response, response.contains("\"message_text\":\"test message 1\""));
+        Assert.assertFalse(response, response.contains("test message 2"));
+        Assert.assertTrue(response, response.endsWith("0\r\nX-Next-Cursor: 1669947792:1\r\n\r\n"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1669947800&until=1669947792, and one with a cursor
+     * that is not a time and a message id
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesInvalidTimeRange() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=1669947800&until=1669947792").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=1669947792&after=2").statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void addAccount(String username) {
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("insert into account (username, password) values (?, 'password')")) {
+            ps.setString(1, username);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void addMessage(int postedBy, String text, long timePostedEpoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)")) {
+            ps.setInt(1, postedBy);
+            ps.setString(2, text);
+            ps.setLong(3, timePostedEpoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
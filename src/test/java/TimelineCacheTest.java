@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.TimelineCache;
+
+public class TimelineCacheTest {
+    /**
+     * A write to another account while account 1's timeline loads does not stop it from being cached.
+     */
+    @Test
+    public void writeToAnotherAccountDuringLoadStillCaches() {
+        TimelineCache cache = new TimelineCache(100, 10);
+        List<Integer> loads = new ArrayList<>();
+        TimelineCache.Loader loader = (accountId, limit) -> {
+            loads.add(accountId);
+            cache.add(new Message(2, 2, "by account 2", 1669947793));
+            return List.of(new Message(1, 1, "test message 1", 1669947792));
+        };
+
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), cache.newest(1, 5, loader));
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), cache.all(1, loader));
+        Assert.assertEquals(List.of(1), loads);
+        Assert.assertEquals(1, cache.getStats().hits);
+    }
+
+    /**
+     * A write to account 1 while its timeline loads keeps the loaded timeline out of the cache, but the read is still
+     * answered from the load rather than by loading again.
+     */
+    @Test
+    public void writeToSameAccountDuringLoadAnswersFromLoad() {
+        TimelineCache cache = new TimelineCache(100, 10);
+        List<Integer> loads = new ArrayList<>();
+        TimelineCache.Loader loader = (accountId, limit) -> {
+            loads.add(accountId);
+            if (loads.size() == 1) {
+                cache.add(new Message(2, 1, "posted during the load", 1669947793));
+                return List.of(new Message(1, 1, "test message 1", 1669947792));
+            }
+            return List.of(new Message(2, 1, "posted during the load", 1669947793),
+                    new Message(1, 1, "test message 1", 1669947792));
+        };
+
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), cache.newest(1, 5, loader));
+        Assert.assertEquals(1, loads.size());
+        Assert.assertEquals(2, cache.newest(1, 5, loader).size());
+        Assert.assertEquals(2, loads.size());
+    }
+
+    /**
+     * Changing a message after adding it to a timeline, or one returned from a timeline, does not change the cached
+     * copy.
+     */
+    @Test
+    public void cachedMessagesAreCopies() {
+        TimelineCache cache = new TimelineCache(100, 10);
+        TimelineCache.Loader loader = (accountId, limit) -> new ArrayList<>();
+        Assert.assertEquals(List.of(), cache.newest(1, 5, loader));
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        cache.add(message);
+        message.setMessage_text("changed after add");
+
+        Message cached = cache.newest(1, 5, loader).get(0);
+        Assert.assertEquals("test message 1", cached.getMessage_text());
+        cached.setMessage_text("changed after read");
+        Assert.assertEquals("test message 1", cache.all(1, loader).get(0).getMessage_text());
+    }
+}
@@ -21,14 +21,16 @@ public class UpdateMessageTextTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
 
     /**
      * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
+     * @throws IOException
      * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() throws IOException, InterruptedException {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
@@ -36,6 +38,7 @@ public class UpdateMessageTextTest {
         objectMapper = new ObjectMapper();
         app.start(8080);
         Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
     }
 
     @After
@@ -58,6 +61,7 @@ public class UpdateMessageTextTest {
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"updated message\" }"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -86,6 +90,7 @@ public class UpdateMessageTextTest {
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"updated message\" }"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -109,6 +114,7 @@ public class UpdateMessageTextTest {
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"\" }"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -132,6 +138,7 @@ public class UpdateMessageTextTest {
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\" }"))
                 .header("Content-Type", "application/json")
+                .header("Authorization", authorization)
                 .build();
         HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WireFormatTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper smileMapper;
+    ObjectMapper cborMapper;
+    Javalin app;
+    String authorization;   // testuser1's bearer token, for message writes.
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and a mapper for
+     * each binary format.
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        smileMapper = new ObjectMapper(new SmileFactory());
+        cborMapper = new ObjectMapper(new CBORFactory());
+        app.start(8080);
+        Thread.sleep(1000);
+        authorization = TestTokens.bearer(webClient, "testuser1");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending a Smile POST localhost:8080/messages with Accept: application/x-jackson-smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Headers: Content-Type: application/x-jackson-smile
+     *  Response Body: the created message in Smile
+     */
+    @Test
+    public void createMessageInSmile() throws IOException, InterruptedException {
+        byte[] body = smileMapper.writeValueAsBytes(new Message(1, "hello in smile", 1669947792));
+        HttpResponse<byte[]> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Content-Type", "application/x-jackson-smile")
+                .header("Accept", "application/x-jackson-smile")
+                .header("Authorization", authorization)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-jackson-smile", response.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(new Message(2, 1, "hello in smile", 1669947792),
+                smileMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending a CBOR POST localhost:8080/login without an Accept header, then GET localhost:8080/accounts/1/messages
+     * with Accept: application/cbor
+     *
+     * Expected Response:
+     *  Login answers in JSON, as the client did not ask for anything else; the list answers in CBOR
+     */
+    @Test
+    public void acceptChoosesResponseFormat() throws IOException, InterruptedException {
+        HttpResponse<byte[]> login = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .header("Content-Type", "application/cbor")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(cborMapper.writeValueAsBytes(new Account("testuser1", "password"))))
+                .build());
+        Assert.assertEquals(200, login.statusCode());
+        Assert.assertEquals("application/json", login.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(new Account(1, "testuser1", "password"), new ObjectMapper().readValue(login.body(), Account.class));
+
+        HttpResponse<byte[]> messages = get("/accounts/1/messages", "application/cbor");
+        Assert.assertEquals("application/cbor", messages.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)),
+                cborMapper.readValue(messages.body(), new TypeReference<List<Message>>() {}));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 in JSON and in Smile
+     *
+     * Expected Response:
+     *  Different ETags, as the two are different representations of the message
+     */
+    @Test
+    public void formatsHaveDistinctETags() throws IOException, InterruptedException {
+        String json = get("/messages/1", "application/json").headers().firstValue("ETag").orElseThrow();
+        String smile = get("/messages/1", "application/x-jackson-smile").headers().firstValue("ETag").orElseThrow();
+        Assert.assertNotEquals(json, smile);
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("Accept", accept)
+                .build());
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}